@@ -0,0 +1,107 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+// Batch mode: runs many operation files in one JVM, each on a GatorLib of its own, on a fixed pool of
+// worker threads. Every file gets the output file the single-file mode would write for it, and a Quit
+// ends only its own file. Files are independent, so the pool scales with cores up to the number of
+// files; results are reported in input order as they complete, then as one aggregate.
+final class BatchRunner {
+    private static final String OUTPUT_SUFFIX = "_output_file.txt";
+
+    int jobs = Runtime.getRuntime().availableProcessors();
+    boolean mapped;
+    boolean offHeapTree;
+    int renderCacheEntries = GatorLib.DEFAULT_RENDER_CACHE_ENTRIES;
+    long slowOperationNanos = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final class Result {
+        final Path file;
+        final long operations;
+        final long nanos;
+
+        Result(Path file, long operations, long nanos) {
+            this.file = file;
+            this.operations = operations;
+            this.nanos = nanos;
+        }
+    }
+
+    // Input files named directly, plus the *.txt files directly inside named directories other than
+    // earlier runs' outputs, in name order
+    static List<Path> expand(List<String> inputs) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String input : inputs) {
+            Path path = Path.of(input);
+            if (!Files.isDirectory(path)) {
+                files.add(path);
+                continue;
+            }
+            try (Stream<Path> entries = Files.list(path)) {
+                entries.filter(Files::isRegularFile)
+                        .filter(file -> {
+                            String name = file.getFileName().toString();
+                            return name.endsWith(".txt") && !name.endsWith(OUTPUT_SUFFIX);
+                        })
+                        .sorted()
+                        .forEach(files::add);
+            }
+        }
+        return files;
+    }
+
+    // Runs every file and prints one line per file and the aggregate throughput. Returns the number of
+    // files that could not be run.
+    int run(List<Path> files) throws InterruptedException {
+        int workers = Math.max(1, Math.min(jobs, files.size()));
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(workers,
+                task -> new Thread(task, "gator-batch-" + threads.incrementAndGet()));
+        long startTime = System.nanoTime();
+        List<Future<Result>> results = new ArrayList<>(files.size());
+        for (Path file : files) {
+            results.add(pool.submit(() -> runFile(file)));
+        }
+        pool.shutdown();
+        long operations = 0;
+        int failed = 0;
+        for (int i = 0; i < files.size(); i++) {
+            try {
+                Result result = results.get(i).get();
+                operations += result.operations;
+                System.out.printf("%s: %d operations in %d ms%n", result.file, result.operations, result.nanos / 1_000_000);
+            } catch (ExecutionException e) {
+                failed++;
+                System.out.printf("%s: failed: %s%n", files.get(i), e.getCause());
+            }
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        System.out.printf("Ran %d files (%d failed), %d operations in %.2f s on %d workers: %.0f ops/sec%n",
+                files.size(), failed, operations, seconds, workers, operations / seconds);
+        return failed;
+    }
+
+    private Result runFile(Path file) throws IOException {
+        if (!Files.isReadable(file)) {
+            throw new IOException("cannot read " + file);
+        }
+        GatorLib library = new GatorLib(offHeapTree, renderCacheEntries);
+        library.metrics.setSlowThresholdNanos(slowOperationNanos);
+        long startTime = System.nanoTime();
+        if (mapped) {
+            library.executeOperationsFromMappedFile(file.toString());
+        } else {
+            library.executeOperationsFromFile(file.toString());
+        }
+        return new Result(file, library.metrics.operations(), System.nanoTime() - startTime);
+    }
+}
@@ -0,0 +1,260 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Versioned binary image of a whole library, used for ExportCatalog, --import and journal snapshots.
+// Books are stored column by column in ID order, titles, authors and availability values go through a
+// deduplicated string table, and the red-black tree shape is kept as one flag byte per node, so an
+// image is loaded by mapping the file and filling the BookTable and tree in one pass, with no parsing
+// and no rebalancing.
+//
+// Layout (big-endian), n = books, m = reservations, s = strings:
+//   header      int magic, int version, long journalSequence, int libraryFlipCount, int treeFlipCount,
+//               int n, int m, int s, int stringBytes                                          (40 bytes)
+//   long[n]     reservation clock per book
+//   long[m]     reservation times
+//   int[n]      book IDs, ascending
+//   int[n] x 3  title, author and availability string indexes
+//   int[n]      borrowedBy
+//   int[n + 1]  first reservation of each book; book i owns reservations [start[i], start[i + 1])
+//   int[m] x 2  reservation patron IDs and priorities, each book's entries in heap array order
+//   int[s + 1]  string start offsets into the string bytes
+//   byte[]      UTF-8 string bytes
+//   byte[n]     tree shape in preorder: black, has-left and has-right bits per node
+class CatalogImage {
+    static final int MAGIC = 0x474c4942; // "GLIB"
+    static final int VERSION = 1;
+    private static final int HEADER_SIZE = 40;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private CatalogImage() {
+    }
+
+    // Writes library to file, replacing it atomically. The caller must keep mutations out, e.g. by
+    // holding the catalog write lock. Returns the number of books written.
+    static int write(GatorLib library, Path file, long journalSequence) throws IOException {
+        Book[] books = library.booksInOrder();
+        int n = books.length;
+        int m = 0;
+        StringTable strings = new StringTable();
+        int[] stringRefs = new int[3 * n];
+        for (int i = 0; i < n; i++) {
+            Book book = books[i];
+            m += book.reservationHeap.size();
+            stringRefs[i] = strings.indexOf(book.title);
+            stringRefs[n + i] = strings.indexOf(book.author);
+            stringRefs[2 * n + i] = strings.indexOf(book.availabilityStatus);
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(journalSequence);
+            out.writeInt(library.libraryColorFlipCount());
+            out.writeInt(library.tree().getColorFlipCount());
+            out.writeInt(n);
+            out.writeInt(m);
+            out.writeInt(strings.size());
+            out.writeInt(strings.totalBytes);
+            for (Book book : books) {
+                out.writeLong(book.reservationClock);
+            }
+            for (Book book : books) {
+                for (int r = 0; r < book.reservationHeap.size(); r++) {
+                    out.writeLong(book.reservationHeap.timeAt(r));
+                }
+            }
+            for (Book book : books) {
+                out.writeInt(book.bookID);
+            }
+            for (int ref : stringRefs) {
+                out.writeInt(ref);
+            }
+            for (Book book : books) {
+                out.writeInt(book.borrowedBy);
+            }
+            int reservationStart = 0;
+            for (Book book : books) {
+                out.writeInt(reservationStart);
+                reservationStart += book.reservationHeap.size();
+            }
+            out.writeInt(reservationStart);
+            for (Book book : books) {
+                for (int r = 0; r < book.reservationHeap.size(); r++) {
+                    out.writeInt(book.reservationHeap.patronAt(r));
+                }
+            }
+            for (Book book : books) {
+                for (int r = 0; r < book.reservationHeap.size(); r++) {
+                    out.writeInt(book.reservationHeap.priorityAt(r));
+                }
+            }
+            int stringOffset = 0;
+            for (int s = 0; s < strings.size(); s++) {
+                out.writeInt(stringOffset);
+                stringOffset += strings.byteLengths[s];
+            }
+            out.writeInt(stringOffset);
+            for (int s = 0; s < strings.size(); s++) {
+                out.write(strings.get(s).getBytes(StandardCharsets.UTF_8));
+            }
+            library.tree().writeShape(out);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return n;
+    }
+
+    // The distinct strings of an image in first-seen order, found by open addressing with linear probing
+    // over slots that hold index + 1, so 0 marks an empty slot. The strings stay those of the books and
+    // are encoded again as they are written, so a distinct string costs a few ints, not a map entry and
+    // a copy of its bytes.
+    private static final class StringTable {
+        private final List<String> strings = new ArrayList<>();
+        private int[] slots = new int[16];
+        int[] byteLengths = new int[16];
+        int totalBytes;
+
+        int size() {
+            return strings.size();
+        }
+
+        String get(int index) {
+            return strings.get(index);
+        }
+
+        int indexOf(String string) {
+            int mask = slots.length - 1;
+            int slot = BookTable.hash(string.hashCode()) & mask;
+            for (; slots[slot] != 0; slot = (slot + 1) & mask) {
+                if (strings.get(slots[slot] - 1).equals(string)) {
+                    return slots[slot] - 1;
+                }
+            }
+            int index = strings.size();
+            strings.add(string);
+            slots[slot] = index + 1;
+            if (index == byteLengths.length) {
+                byteLengths = Arrays.copyOf(byteLengths, 2 * index);
+            }
+            byteLengths[index] = string.getBytes(StandardCharsets.UTF_8).length;
+            totalBytes += byteLengths[index];
+            if (2 * strings.size() > slots.length) {
+                rehash(2 * slots.length);
+            }
+            return index;
+        }
+
+        private void rehash(int capacity) {
+            slots = new int[capacity];
+            int mask = capacity - 1;
+            for (int index = 0; index < strings.size(); index++) {
+                int slot = BookTable.hash(strings.get(index).hashCode()) & mask;
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = index + 1;
+            }
+        }
+    }
+
+    // Loads an image into library, which must be empty, and returns the journal sequence it records
+    static long load(Path file, GatorLib library) throws IOException {
+        MappedByteBuffer image;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is larger than the 2 GB a single mapping can hold");
+            }
+            image = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (image.capacity() < HEADER_SIZE || image.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a catalog image");
+        }
+        int version = image.getInt(4);
+        if (version != VERSION) {
+            throw new IOException(file + " has catalog image version " + version + ", expected " + VERSION);
+        }
+        long journalSequence = image.getLong(8);
+        int libraryFlipCount = image.getInt(16);
+        int treeFlipCount = image.getInt(20);
+        int n = image.getInt(24);
+        int m = image.getInt(28);
+        int s = image.getInt(32);
+        int stringBytes = image.getInt(36);
+
+        int clocks = HEADER_SIZE;
+        int times = clocks + 8 * n;
+        int ids = times + 8 * m;
+        int titles = ids + 4 * n;
+        int authors = titles + 4 * n;
+        int availabilities = authors + 4 * n;
+        int borrowers = availabilities + 4 * n;
+        int reservationStarts = borrowers + 4 * n;
+        int patrons = reservationStarts + 4 * (n + 1);
+        int priorities = patrons + 4 * m;
+        int stringOffsets = priorities + 4 * m;
+        int stringData = stringOffsets + 4 * (s + 1);
+        int shape = stringData + stringBytes;
+        if (image.capacity() != (long) shape + n) {
+            throw new IOException(file + " is truncated or corrupt");
+        }
+
+        int[] keys = new int[n];
+        image.position(ids);
+        image.asIntBuffer().get(keys);
+
+        // Each distinct string is decoded once and shared by every book that uses it
+        String[] stringCache = new String[s];
+        byte[] scratch = new byte[64];
+        BookTable table = new BookTable(n);
+        for (int i = 0; i < n; i++) {
+            Book book = new Book(keys[i],
+                    string(image, image.getInt(titles + 4 * i), stringOffsets, stringData, stringCache, scratch),
+                    string(image, image.getInt(authors + 4 * i), stringOffsets, stringData, stringCache, scratch),
+                    string(image, image.getInt(availabilities + 4 * i), stringOffsets, stringData, stringCache, scratch),
+                    image.getInt(borrowers + 4 * i));
+            book.reservationClock = image.getLong(clocks + 8 * i);
+            int end = image.getInt(reservationStarts + 4 * (i + 1));
+            for (int r = image.getInt(reservationStarts + 4 * i); r < end; r++) {
+                // Entries are in heap array order, so each insert leaves them where they were
+                book.reservationHeap.insert(image.getInt(patrons + 4 * r), image.getInt(priorities + 4 * r),
+                        image.getLong(times + 8 * r));
+            }
+            table.put(book.bookID, book);
+        }
+        image.position(shape);
+        RedBlackTree tree = library.newTree();
+        tree.restoreShape(image, keys, treeFlipCount);
+        library.restore(table, tree, libraryFlipCount);
+        return journalSequence;
+    }
+
+    private static String string(ByteBuffer image, int index, int stringOffsets, int stringData, String[] cache, byte[] scratch) {
+        String cached = cache[index];
+        if (cached == null) {
+            int start = image.getInt(stringOffsets + 4 * index);
+            int length = image.getInt(stringOffsets + 4 * (index + 1)) - start;
+            byte[] bytes = length <= scratch.length ? scratch : new byte[length];
+            image.get(stringData + start, bytes, 0, length);
+            cached = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            cache[index] = cached;
+        }
+        return cached;
+    }
+}
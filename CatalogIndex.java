@@ -0,0 +1,438 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+
+// Secondary indexes over the catalog for FindBooksByAuthor and SearchTitle, kept up to date by
+// GatorLib.insertBook and deleteBook under the catalog write lock.
+//
+// Titles and authors are stored with their whitespace removed, and printed with a space before every
+// capital letter, so a word is a run starting at a capital letter ("BookTitleFour" holds the words
+// book, title and four). Words are matched case-insensitively. Each title word maps to the sorted set
+// of books whose title contains it, and the words themselves are kept sorted, so the books holding
+// any word with a given prefix are one subMap away. Authors are matched on their whole name.
+class CatalogIndex {
+    private final Map<String, IdSet> authors = new HashMap<>();
+    private final Map<String, IdSet> titleWords = new HashMap<>();
+    // The same sets by word in word order, for prefix search; changes only when a word comes or goes
+    private final TreeMap<String, IdSet> sortedTitleWords = new TreeMap<>();
+    // Most words a SearchTitle prefix may expand to before titles are checked for it one by one
+    private static final int MAX_PREFIX_WORDS = 32;
+
+    void add(int bookID, String title, String author) {
+        authors.computeIfAbsent(authorKey(author), key -> new IdSet()).add(bookID);
+        for (String word : words(title)) {
+            IdSet ids = titleWords.get(word);
+            if (ids == null) {
+                ids = new IdSet();
+                titleWords.put(word, ids);
+                sortedTitleWords.put(word, ids);
+            }
+            ids.add(bookID);
+        }
+    }
+
+    void remove(int bookID, String title, String author) {
+        remove(authors, authorKey(author), bookID);
+        for (String word : words(title)) {
+            if (remove(titleWords, word, bookID)) {
+                sortedTitleWords.remove(word);
+            }
+        }
+    }
+
+    // Removes bookID from the set of key, dropping the set once it is empty; returns true if it was
+    private static boolean remove(Map<String, IdSet> index, String key, int bookID) {
+        IdSet ids = index.get(key);
+        if (ids != null && ids.remove(bookID) && ids.size() == 0) {
+            index.remove(key);
+            return true;
+        }
+        return false;
+    }
+
+    // The lowest limit IDs of books by author, ignoring case and whitespace
+    int[] findByAuthor(String author, int limit) {
+        IdSet ids = authors.get(authorKey(author));
+        if (ids == null || limit <= 0) {
+            return new int[0];
+        }
+        int[] found = new int[Math.min(limit, ids.size())];
+        PrimitiveIterator.OfInt iterator = ids.iterator();
+        for (int i = 0; i < found.length; i++) {
+            found[i] = iterator.nextInt();
+        }
+        return found;
+    }
+
+    // Up to limit IDs, ascending, of books whose title holds every word of query. The last word also
+    // matches as a prefix, unless query ends in whitespace, so "Title Fo" finds "Book Title Four".
+    // The sets of the complete words, and the union of the sets of the words starting with the
+    // prefix, are intersected by leapfrogging: each skips ahead to the highest ID another has
+    // reached, so the lowest matching IDs are found without visiting most of any set. A prefix
+    // shared by more than MAX_PREFIX_WORDS words is checked against the titles of the books in the
+    // intersection instead. A query of one partial word merges the sets of the words starting with
+    // it, however many there are, through a heap of their cursors.
+    int[] searchTitle(String query, int limit, IntFunction<String> titleOf) {
+        String[] queryWords = words(query);
+        if (queryWords.length == 0 || limit <= 0) {
+            return new int[0];
+        }
+        boolean lastIsPrefix = !Character.isWhitespace(query.charAt(query.length() - 1));
+        int completeWords = lastIsPrefix ? queryWords.length - 1 : queryWords.length;
+        String prefix = lastIsPrefix ? queryWords[queryWords.length - 1] : null;
+
+        int[] found = new int[16];
+        int count = 0;
+        if (completeWords > 0) {
+            IdSet.Cursor[][] legs = new IdSet.Cursor[completeWords + 1][];
+            for (int w = 0; w < completeWords; w++) {
+                IdSet ids = titleWords.get(queryWords[w]);
+                if (ids == null) {
+                    return new int[0];
+                }
+                legs[w] = new IdSet.Cursor[] {ids.cursor()};
+            }
+            int legCount = completeWords;
+            if (prefix != null) {
+                IdSet.Cursor[] union = prefixUnion(prefix);
+                if (union != null) {
+                    if (union.length == 0) {
+                        return new int[0];
+                    }
+                    legs[legCount++] = union;
+                    prefix = null;
+                }
+            }
+            long target = Long.MIN_VALUE;
+            while (count < limit) {
+                boolean agreed = true;
+                for (int l = 0; l < legCount; l++) {
+                    long id = advanceTo(legs[l], target);
+                    if (id == Long.MAX_VALUE) {
+                        return Arrays.copyOf(found, count);
+                    }
+                    if (id > target) {
+                        agreed = target == Long.MIN_VALUE && l == 0;
+                        target = id;
+                    }
+                }
+                if (!agreed) {
+                    continue;
+                }
+                int bookID = (int) target;
+                if (prefix == null || hasWordStartingWith(titleOf.apply(bookID), prefix)) {
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, count * 2);
+                    }
+                    found[count++] = bookID;
+                }
+                target++;
+            }
+            return Arrays.copyOf(found, count);
+        }
+        // A min-heap of the words' cursors keyed by the ID each is at, so IDs come out ascending. A
+        // title can hold several words with the prefix, so the same ID may come up more than once.
+        IdSet.Cursor[] cursors = new IdSet.Cursor[16];
+        long[] heads = new long[16];
+        int size = 0;
+        for (IdSet ids : withPrefix(prefix).values()) {
+            if (size == cursors.length) {
+                cursors = Arrays.copyOf(cursors, size * 2);
+                heads = Arrays.copyOf(heads, size * 2);
+            }
+            cursors[size] = ids.cursor();
+            heads[size] = cursors[size].advanceTo(Long.MIN_VALUE);
+            size++;
+        }
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(heads, cursors, i, size);
+        }
+        long last = Long.MIN_VALUE;
+        while (count < limit && size > 0 && heads[0] != Long.MAX_VALUE) {
+            long id = heads[0];
+            if (id != last) {
+                if (count == found.length) {
+                    found = Arrays.copyOf(found, count * 2);
+                }
+                found[count++] = (int) id;
+                last = id;
+            }
+            heads[0] = cursors[0].advanceTo(id + 1);
+            if (heads[0] == Long.MAX_VALUE) {
+                size--;
+                heads[0] = heads[size];
+                cursors[0] = cursors[size];
+            }
+            siftDown(heads, cursors, 0, size);
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    private static void siftDown(long[] heads, IdSet.Cursor[] cursors, int index, int size) {
+        while (true) {
+            int smallest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && heads[left] < heads[smallest]) {
+                smallest = left;
+            }
+            if (right < size && heads[right] < heads[smallest]) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                return;
+            }
+            long head = heads[index];
+            heads[index] = heads[smallest];
+            heads[smallest] = head;
+            IdSet.Cursor cursor = cursors[index];
+            cursors[index] = cursors[smallest];
+            cursors[smallest] = cursor;
+            index = smallest;
+        }
+    }
+
+    // Cursors over the sets of every word starting with prefix, or null if there are more than
+    // MAX_PREFIX_WORDS of them
+    private IdSet.Cursor[] prefixUnion(String prefix) {
+        IdSet.Cursor[] union = new IdSet.Cursor[MAX_PREFIX_WORDS];
+        int count = 0;
+        for (IdSet ids : withPrefix(prefix).values()) {
+            if (count == MAX_PREFIX_WORDS) {
+                return null;
+            }
+            union[count++] = ids.cursor();
+        }
+        return Arrays.copyOf(union, count);
+    }
+
+    // The lowest ID at or above target in any of the cursors' sets, or Long.MAX_VALUE if there is none
+    private static long advanceTo(IdSet.Cursor[] union, long target) {
+        long lowest = Long.MAX_VALUE;
+        for (IdSet.Cursor cursor : union) {
+            lowest = Math.min(lowest, cursor.advanceTo(target));
+        }
+        return lowest;
+    }
+
+    private NavigableMap<String, IdSet> withPrefix(String prefix) {
+        return sortedTitleWords.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    private static boolean hasWordStartingWith(String title, String prefix) {
+        for (String word : words(title)) {
+            if (word.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String authorKey(String author) {
+        StringBuilder key = new StringBuilder(author.length());
+        for (int i = 0; i < author.length(); i++) {
+            char c = author.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                key.append(c);
+            }
+        }
+        return key.toString().toLowerCase(Locale.ROOT);
+    }
+
+    // Lower-cased words of text, split at whitespace and before every capital letter, as
+    // ResponseWriter.spaced displays them
+    static String[] words(CharSequence text) {
+        String[] words = new String[4];
+        int count = 0;
+        char[] word = new char[text.length()];
+        int length = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            boolean space = Character.isWhitespace(c);
+            if ((space || (c >= 'A' && c <= 'Z')) && length > 0) {
+                if (count == words.length) {
+                    words = Arrays.copyOf(words, count * 2);
+                }
+                words[count++] = new String(word, 0, length);
+                length = 0;
+            }
+            if (!space) {
+                word[length++] = c < 0x80 ? (c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c) : Character.toLowerCase(c);
+            }
+        }
+        return Arrays.copyOf(words, count);
+    }
+
+    // Sorted set of book IDs held as a list of sorted blocks of at most BLOCK_SIZE IDs, so an insert or
+    // removal moves at most one block's worth of entries, however many books share a word
+    static final class IdSet {
+        private static final int BLOCK_SIZE = 256;
+
+        private int[][] blocks = new int[1][];
+        private int[] counts = new int[1];
+        private int[] firsts = new int[1]; // Lowest ID of each block, searched without touching the blocks
+        private int blockCount;
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        boolean add(int id) {
+            if (blockCount == 0) {
+                blocks[0] = new int[2];
+                blockCount = 1;
+            }
+            int b = blockFor(id);
+            int position = Arrays.binarySearch(blocks[b], 0, counts[b], id);
+            if (position >= 0) {
+                return false;
+            }
+            position = -position - 1;
+            if (counts[b] == blocks[b].length) {
+                if (blocks[b].length < BLOCK_SIZE) {
+                    blocks[b] = Arrays.copyOf(blocks[b], Math.min(BLOCK_SIZE, blocks[b].length * 2));
+                } else if (b == blockCount - 1 && position == counts[b]) {
+                    // Ascending inserts start a new block rather than leave a trail of half-full ones
+                    insertBlock(b + 1, new int[BLOCK_SIZE], 0);
+                    b++;
+                    position = 0;
+                } else {
+                    int half = BLOCK_SIZE / 2;
+                    int[] upper = new int[BLOCK_SIZE];
+                    System.arraycopy(blocks[b], half, upper, 0, BLOCK_SIZE - half);
+                    counts[b] = half;
+                    insertBlock(b + 1, upper, BLOCK_SIZE - half);
+                    firsts[b + 1] = upper[0];
+                    if (position > half) {
+                        b++;
+                        position -= half;
+                    }
+                }
+            }
+            int[] block = blocks[b];
+            System.arraycopy(block, position, block, position + 1, counts[b] - position);
+            block[position] = id;
+            counts[b]++;
+            if (position == 0) {
+                firsts[b] = id;
+            }
+            size++;
+            return true;
+        }
+
+        boolean remove(int id) {
+            if (size == 0) {
+                return false;
+            }
+            int b = blockFor(id);
+            int position = Arrays.binarySearch(blocks[b], 0, counts[b], id);
+            if (position < 0) {
+                return false;
+            }
+            int[] block = blocks[b];
+            System.arraycopy(block, position + 1, block, position, counts[b] - position - 1);
+            counts[b]--;
+            size--;
+            firsts[b] = block[0];
+            if (counts[b] == 0 && blockCount > 1) {
+                System.arraycopy(blocks, b + 1, blocks, b, blockCount - b - 1);
+                System.arraycopy(counts, b + 1, counts, b, blockCount - b - 1);
+                System.arraycopy(firsts, b + 1, firsts, b, blockCount - b - 1);
+                blockCount--;
+                blocks[blockCount] = null;
+            }
+            return true;
+        }
+
+        // The block whose range holds id: the last one starting at or below it, or the first
+        private int blockFor(int id) {
+            int low = 0;
+            int high = blockCount - 1;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (firsts[middle] <= id) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return low;
+        }
+
+        private void insertBlock(int index, int[] block, int count) {
+            if (blockCount == blocks.length) {
+                blocks = Arrays.copyOf(blocks, blockCount * 2);
+                counts = Arrays.copyOf(counts, blockCount * 2);
+                firsts = Arrays.copyOf(firsts, blockCount * 2);
+            }
+            System.arraycopy(blocks, index, blocks, index + 1, blockCount - index);
+            System.arraycopy(counts, index, counts, index + 1, blockCount - index);
+            System.arraycopy(firsts, index, firsts, index + 1, blockCount - index);
+            blocks[index] = block;
+            counts[index] = count;
+            blockCount++;
+        }
+
+        // IDs in ascending order; the set must not change while the iterator is in use
+        PrimitiveIterator.OfInt iterator() {
+            Cursor cursor = cursor();
+            return new PrimitiveIterator.OfInt() {
+                private long next = cursor.advanceTo(Long.MIN_VALUE);
+
+                public boolean hasNext() {
+                    return next != Long.MAX_VALUE;
+                }
+
+                public int nextInt() {
+                    if (next == Long.MAX_VALUE) {
+                        throw new NoSuchElementException();
+                    }
+                    int id = (int) next;
+                    next = cursor.advanceTo(next + 1);
+                    return id;
+                }
+            };
+        }
+
+        Cursor cursor() {
+            return new Cursor();
+        }
+
+        // Forward-only position in the set; the set must not change while it is in use
+        final class Cursor {
+            private int block;
+            private int position;
+
+            // Moves to the lowest ID at or above target and returns it, or Long.MAX_VALUE past the end.
+            // Whole blocks below target are skipped by their last ID.
+            long advanceTo(long target) {
+                while (block < blockCount && (counts[block] == 0 || blocks[block][counts[block] - 1] < target)) {
+                    block++;
+                    position = 0;
+                }
+                if (block == blockCount) {
+                    return Long.MAX_VALUE;
+                }
+                int[] ids = blocks[block];
+                if (ids[position] < target) {
+                    // Targets are usually close ahead, so gallop before searching
+                    int step = 1;
+                    while (position + step < counts[block] && ids[position + step] < target) {
+                        position += step;
+                        step <<= 1;
+                    }
+                    int found = Arrays.binarySearch(ids, position + 1, Math.min(position + step + 1, counts[block]), (int) target);
+                    position = found >= 0 ? found : -found - 1;
+                }
+                return ids[position];
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+// A consistent, read-only view of a GatorLib's catalog as of the moment it was opened. Opening one
+// is O(1) and takes no lock: it takes the current root of the library's PersistentBookTree and
+// starts a new snapshot epoch. Commands that change a book afterwards first keep the state they
+// replace for the snapshot, so a long PrintBooks can walk it holding no catalog lock while
+// BorrowBook, ReturnBook, InsertBook and DeleteBook go on. Close it when done, so the kept book
+// states can be dropped.
+final class CatalogSnapshot implements AutoCloseable {
+    final long version; // Sees book states changed before this epoch began
+    final PersistentBookTree.Node root;
+    private final GatorLib library;
+    private boolean closed;
+
+    CatalogSnapshot(GatorLib library, long version, PersistentBookTree.Node root) {
+        this.library = library;
+        this.version = version;
+        this.root = root;
+    }
+
+    int size() {
+        return PersistentBookTree.sizeOf(root);
+    }
+
+    int countInRange(int lowID, int highID) {
+        return PersistentBookTree.countInRange(root, lowID, highID);
+    }
+
+    // Books from the offset-th one with an ID of at least lowID onwards, in ascending ID order
+    PersistentBookTree.Cursor books(int lowID, long offset) {
+        return new PersistentBookTree.Cursor(root, PersistentBookTree.rank(root, lowID) + offset);
+    }
+
+    public void close() {
+        if (!closed) {
+            closed = true;
+            library.closeSnapshot(version);
+        }
+    }
+}
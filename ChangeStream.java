@@ -0,0 +1,361 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Change-data-capture for a GatorLib: a sequenced binary stream of every mutation, for Replica
+// followers to apply to libraries of their own. The stream goes to a file that followers tail, or to
+// each follower that connects to a local socket. Every subscriber first gets a CatalogImage of the
+// library as it was when it subscribed, then every change after it, so a follower never has to see
+// the leader's whole history.
+//
+// Layout (big-endian):
+//   header   int magic, int version, int imageLength, then a CatalogImage of imageLength bytes whose
+//            journal sequence is the stream sequence it includes
+//   records  int payloadLength, long sequence, long leaderNanos, byte type, payload
+// Types and payloads are LibraryJournal's, plus END with no payload when the leader shuts down.
+// Version 2 gave the strings in payloads int lengths, as the journal has, in place of 16-bit ones.
+// leaderNanos is the leader's wall clock, in nanoseconds since the epoch, when it logged the change;
+// followers on the same machine measure replication lag against it.
+//
+// Records are buffered and handed to subscribers at most every FLUSH_INTERVAL, so a burst of commands
+// costs one write per subscriber rather than one each, and a daemon thread sends whatever a quiet
+// stream still holds; lag from batching is bounded by the interval. Handing records on only queues
+// them: each subscriber has a sender thread of its own, so the leader never waits on a follower's
+// socket. A subscriber whose write fails, or that falls MAX_QUEUED_BYTES behind, is dropped and the
+// leader carries on. Streaming is for read scaling, not durability: nothing is fsynced.
+final class ChangeStream implements Closeable {
+    static final int MAGIC = 0x47434443; // "GCDC"
+    static final int VERSION = 2;
+    static final byte END = 0;
+    static final int HEADER_SIZE = 12;
+    static final int RECORD_OVERHEAD = 4 + 8 + 8 + 1;
+    static final int BUFFER_SIZE = 1 << 20;
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    static final long MAX_QUEUED_BYTES = 64L << 20;
+    private static final long CLOSE_TIMEOUT_MILLIS = 1000;
+    private static final ByteBuffer CLOSE = ByteBuffer.allocate(0); // Queued last: send nothing more
+
+    private final GatorLib library;
+    private final String target;
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE); // Larger only while it holds a record too big for it
+    private final List<Subscriber> subscribers = new ArrayList<>();
+    private final AtomicInteger senderCount = new AtomicInteger();
+    private final ScheduledExecutorService flusher;
+    private ServerSocketChannel server; // null when streaming to a file
+    private long sequence;
+    private long flushedNanos; // When buffered records were last handed on
+    private boolean closed;
+
+    private ChangeStream(GatorLib library, String target) {
+        this.library = library;
+        this.target = target;
+        flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "gator-change-stream-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_NANOS, FLUSH_INTERVAL_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    // Streams library's changes from now on into file, which followers can tail
+    static ChangeStream toFile(GatorLib library, Path file) throws IOException {
+        ChangeStream stream = new ChangeStream(library, file.toString());
+        library.attachChangeStream(stream);
+        library.subscribe(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING));
+        return stream;
+    }
+
+    // Streams library's changes to every follower that connects to address, from when it connects
+    static ChangeStream listen(GatorLib library, SocketAddress address) throws IOException {
+        ChangeStream stream = new ChangeStream(library, address.toString());
+        if (address instanceof UnixDomainSocketAddress) {
+            Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+            stream.server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            stream.server = ServerSocketChannel.open();
+        }
+        stream.server.bind(address);
+        library.attachChangeStream(stream);
+        Thread acceptor = new Thread(stream::acceptFollowers, "gator-change-stream-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return stream;
+    }
+
+    private void acceptFollowers() {
+        while (server.isOpen()) {
+            try {
+                SocketChannel follower = server.accept();
+                try {
+                    library.subscribe(follower);
+                    System.err.println("Change stream: a follower subscribed at sequence " + sequence());
+                } catch (IOException e) {
+                    System.err.println("Change stream: could not start a follower: " + e.getMessage());
+                    follower.close();
+                }
+            } catch (IOException e) {
+                if (server.isOpen()) {
+                    System.err.println("Change stream: accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Writes an image of library and starts sending it to channel, followed by every change after it.
+    // The caller holds library's catalog write lock, so the image and the changes after it line up
+    // exactly; the image goes to a local file under the lock, and the follower is sent it afterwards.
+    synchronized void subscribe(WritableByteChannel channel) throws IOException {
+        flush();
+        Path image = Files.createTempFile("gator-stream", ".img");
+        try {
+            CatalogImage.write(library, image, sequence);
+            if (Files.size(image) > Integer.MAX_VALUE) {
+                throw new IOException("Catalog image of " + Files.size(image) + " bytes is too large to stream");
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(image);
+            throw e;
+        }
+        Subscriber subscriber = new Subscriber(channel, image);
+        subscribers.add(subscriber);
+        subscriber.sender.start();
+    }
+
+    // One follower's share of the stream: the image it starts from, then record batches from a queue
+    // that its own thread drains, so only that follower waits on its channel
+    private final class Subscriber implements Runnable {
+        final WritableByteChannel channel;
+        final Thread sender;
+        private final Path image; // Deleted once sent
+        private final LinkedBlockingQueue<ByteBuffer> queue = new LinkedBlockingQueue<>();
+        private final AtomicLong queuedBytes = new AtomicLong();
+
+        Subscriber(WritableByteChannel channel, Path image) {
+            this.channel = channel;
+            this.image = image;
+            sender = new Thread(this, "gator-change-stream-send-" + senderCount.incrementAndGet());
+            sender.setDaemon(true);
+        }
+
+        // Queues batch unless that would put the subscriber more than MAX_QUEUED_BYTES behind
+        boolean offer(ByteBuffer batch) {
+            if (queuedBytes.addAndGet(batch.remaining()) > MAX_QUEUED_BYTES) {
+                return false;
+            }
+            queue.add(batch);
+            return true;
+        }
+
+        public void run() {
+            try {
+                sendImage();
+                for (ByteBuffer batch = queue.take(); batch != CLOSE; batch = queue.take()) {
+                    int length = batch.remaining();
+                    writeFully(channel, batch);
+                    queuedBytes.addAndGet(-length);
+                }
+            } catch (IOException e) {
+                if (channel.isOpen()) {
+                    System.err.println("Change stream: dropping a subscriber: " + e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                // Cut off by close
+            } finally {
+                try {
+                    Files.deleteIfExists(image);
+                } catch (IOException e) {
+                    // Left in the temporary directory
+                }
+                drop(this);
+            }
+        }
+
+        private void sendImage() throws IOException {
+            try (FileChannel in = FileChannel.open(image, StandardOpenOption.READ)) {
+                long length = in.size();
+                writeFully(channel, ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).putInt((int) length).flip());
+                for (long position = 0; position < length; ) {
+                    position += in.transferTo(position, length - position, channel);
+                }
+            }
+        }
+    }
+
+    // Stops streaming to subscriber; closing its channel also ends a write it is blocked in
+    private synchronized void drop(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+        closeQuietly(subscriber.channel);
+    }
+
+    // The log methods are called while the caller still holds the locks that ordered the mutation, so
+    // stream order matches the order mutations were applied in
+    synchronized void logInsertBook(int bookID, String title, String author, String availabilityStatus) throws IOException {
+        byte[] titleBytes = LibraryJournal.encode(title);
+        byte[] authorBytes = LibraryJournal.encode(author);
+        byte[] availabilityBytes = LibraryJournal.encode(availabilityStatus);
+        beginRecord(LibraryJournal.INSERT_BOOK, LibraryJournal.payloadLength(4 + 12, titleBytes, authorBytes, availabilityBytes));
+        buffer.putInt(bookID);
+        putString(titleBytes);
+        putString(authorBytes);
+        putString(availabilityBytes);
+    }
+
+    synchronized void logBorrowBook(int patronID, int bookID, int patronPriority) throws IOException {
+        beginRecord(LibraryJournal.BORROW_BOOK, 12);
+        buffer.putInt(patronID).putInt(bookID).putInt(patronPriority);
+    }
+
+    synchronized void logReturnBook(int patronID, int bookID) throws IOException {
+        beginRecord(LibraryJournal.RETURN_BOOK, 8);
+        buffer.putInt(patronID).putInt(bookID);
+    }
+
+    synchronized void logDeleteBook(int bookID) throws IOException {
+        beginRecord(LibraryJournal.DELETE_BOOK, 4);
+        buffer.putInt(bookID);
+    }
+
+    synchronized void logCancelReservation(int patronID, int bookID) throws IOException {
+        beginRecord(LibraryJournal.CANCEL_RESERVATION, 8);
+        buffer.putInt(patronID).putInt(bookID);
+    }
+
+    synchronized void logChangePriority(int patronID, int bookID, int patronPriority) throws IOException {
+        beginRecord(LibraryJournal.CHANGE_PRIORITY, 12);
+        buffer.putInt(patronID).putInt(bookID).putInt(patronPriority);
+    }
+
+    synchronized void logBulkLoad(int expectedBooks) throws IOException {
+        beginRecord(LibraryJournal.BULK_LOAD, 4);
+        buffer.putInt(expectedBooks);
+    }
+
+    synchronized void logEndBulkLoad() throws IOException {
+        beginRecord(LibraryJournal.END_BULK_LOAD, 0);
+    }
+
+    // Int length followed by the bytes
+    private void putString(byte[] bytes) {
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    private void beginRecord(byte type, int payloadLength) {
+        if (buffer.remaining() < RECORD_OVERHEAD + payloadLength) {
+            flush();
+            if (buffer.capacity() < RECORD_OVERHEAD + payloadLength) {
+                buffer = ByteBuffer.allocate(RECORD_OVERHEAD + payloadLength);
+            }
+        }
+        buffer.putInt(payloadLength).putLong(++sequence).putLong(wallClockNanos()).put(type);
+    }
+
+    // Called after each mutating command, once its locks are released: flushes if the interval is up
+    synchronized void commit() {
+        if (System.nanoTime() - flushedNanos >= FLUSH_INTERVAL_NANOS) {
+            flush();
+        }
+    }
+
+    // Hands buffered records to every subscriber's queue. Subscribers share one copy of them.
+    synchronized void flush() {
+        flushedNanos = System.nanoTime();
+        if (buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        ByteBuffer batch = ByteBuffer.allocate(buffer.remaining()).put(buffer).flip().asReadOnlyBuffer();
+        for (Iterator<Subscriber> i = subscribers.iterator(); i.hasNext(); ) {
+            Subscriber subscriber = i.next();
+            if (!subscriber.offer(batch.duplicate())) {
+                System.err.println("Change stream: dropping a subscriber more than " + MAX_QUEUED_BYTES + " bytes behind");
+                i.remove();
+                closeQuietly(subscriber.channel);
+            }
+        }
+        buffer = buffer.capacity() > BUFFER_SIZE ? ByteBuffer.allocate(BUFFER_SIZE) : buffer.clear();
+    }
+
+    private static void writeFully(WritableByteChannel channel, ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Already broken
+        }
+    }
+
+    static long wallClockNanos() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+    }
+
+    synchronized long sequence() {
+        return sequence;
+    }
+
+    synchronized int subscriberCount() {
+        return subscribers.size();
+    }
+
+    String target() {
+        return target;
+    }
+
+    // Ends the stream with an END record, so followers know the leader is gone, and closes it. Each
+    // subscriber gets up to CLOSE_TIMEOUT to receive what it has queued; one still behind is cut off.
+    public void close() throws IOException {
+        List<Subscriber> ending;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            flusher.shutdownNow();
+            if (server != null) {
+                server.close();
+            }
+            beginRecord(END, 0);
+            flush();
+            ending = new ArrayList<>(subscribers);
+            for (Subscriber subscriber : ending) {
+                subscriber.queue.add(CLOSE);
+            }
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLOSE_TIMEOUT_MILLIS);
+        for (Subscriber subscriber : ending) {
+            try {
+                subscriber.sender.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            subscriber.sender.interrupt();
+            closeQuietly(subscriber.channel);
+        }
+    }
+}
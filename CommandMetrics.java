@@ -0,0 +1,214 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+// Per-command counts and latency histograms for every processOperation call. Each command type, plus
+// one slot for lines that failed to parse, owns a row of LatencyHistogram buckets in a shared atomic
+// array, so recording is a few atomic adds with no allocation and no lock, from any number of
+// session threads. Readers take a LatencyHistogram copy of a row, which may be a few increments
+// behind concurrent writers.
+//
+// Operations slower than the slow threshold are also counted separately and committed as
+// gator.SlowOperation JFR events when a recording has that event enabled.
+class CommandMetrics {
+    static final String INVALID = "Invalid";
+    private static final OperationType[] TYPES = OperationType.values();
+    private static final int SLOTS = TYPES.length + 1;
+    private static final int INVALID_SLOT = TYPES.length;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(SLOTS * LatencyHistogram.BUCKETS);
+    private final AtomicLongArray totalNanos = new AtomicLongArray(SLOTS);
+    private final AtomicLongArray maxNanos = new AtomicLongArray(SLOTS);
+    private final AtomicLongArray slowCounts = new AtomicLongArray(SLOTS);
+    private final long startNanos = System.nanoTime();
+    private volatile long slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Name("gator.SlowOperation")
+    @Label("Slow Library Operation")
+    @Category("GatorLibrary")
+    @Description("A command whose processing took longer than the configured slow-operation threshold")
+    static class SlowOperationEvent extends Event {
+        @Label("Command")
+        String command;
+
+        @Label("Operation")
+        String operation;
+
+        @Label("Latency")
+        @Timespan(Timespan.NANOSECONDS)
+        long latency;
+    }
+
+    void setSlowThresholdNanos(long nanos) {
+        slowThresholdNanos = nanos;
+    }
+
+    // type is null for a line that did not parse
+    void record(OperationType type, CharSequence operation, long nanos) {
+        int slot = type == null ? INVALID_SLOT : type.ordinal();
+        buckets.getAndIncrement(slot * LatencyHistogram.BUCKETS + LatencyHistogram.bucketOf(nanos));
+        totalNanos.getAndAdd(slot, nanos);
+        long max = maxNanos.get(slot);
+        while (nanos > max && !maxNanos.compareAndSet(slot, max, nanos)) {
+            max = maxNanos.get(slot);
+        }
+        if (nanos >= slowThresholdNanos) {
+            slowCounts.getAndIncrement(slot);
+            SlowOperationEvent event = new SlowOperationEvent();
+            if (event.shouldCommit()) {
+                event.command = slotName(slot);
+                event.operation = operation.toString();
+                event.latency = nanos;
+                event.commit();
+            }
+        }
+    }
+
+    private static String slotName(int slot) {
+        return slot == INVALID_SLOT ? INVALID : TYPES[slot].commandName;
+    }
+
+    LatencyHistogram histogram(int slot) {
+        long[] counts = new long[LatencyHistogram.BUCKETS];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(slot * LatencyHistogram.BUCKETS + i);
+        }
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.add(counts, totalNanos.get(slot), maxNanos.get(slot));
+        return histogram;
+    }
+
+    LatencyHistogram histogram(OperationType type) {
+        return histogram(type.ordinal());
+    }
+
+    LatencyHistogram invalidHistogram() {
+        return histogram(INVALID_SLOT);
+    }
+
+    // Operations recorded so far, of every command type and invalid lines
+    long operations() {
+        long count = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            count += buckets.get(i);
+        }
+        return count;
+    }
+
+    double uptimeSeconds() {
+        return (System.nanoTime() - startNanos) / 1e9;
+    }
+
+    // Registers one CommandStatsMBean per command type with the platform MBean server
+    void registerMBeans() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (int slot = 0; slot < SLOTS; slot++) {
+            ObjectName name = new ObjectName("gator:type=Commands,name=" + slotName(slot));
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new StandardMBean(new CommandStats(slot), CommandStatsMBean.class), name);
+            }
+        }
+    }
+
+    private class CommandStats implements CommandStatsMBean {
+        private final int slot;
+
+        CommandStats(int slot) {
+            this.slot = slot;
+        }
+
+        public long getCount() {
+            return histogram(slot).count();
+        }
+
+        public double getOperationsPerSecond() {
+            return getCount() / uptimeSeconds();
+        }
+
+        public double getMeanMicros() {
+            return histogram(slot).mean() / 1e3;
+        }
+
+        public double getP50Micros() {
+            return histogram(slot).percentile(0.5) / 1e3;
+        }
+
+        public double getP99Micros() {
+            return histogram(slot).percentile(0.99) / 1e3;
+        }
+
+        public double getP999Micros() {
+            return histogram(slot).percentile(0.999) / 1e3;
+        }
+
+        public double getMaxMicros() {
+            return maxNanos.get(slot) / 1e3;
+        }
+
+        public long getSlowCount() {
+            return slowCounts.get(slot);
+        }
+    }
+
+    // One JSON object with overall throughput and a latency summary per command seen so far
+    String toJson() {
+        StringBuilder json = new StringBuilder(1024);
+        LatencyHistogram all = new LatencyHistogram();
+        StringBuilder commands = new StringBuilder(1024);
+        for (int slot = 0; slot < SLOTS; slot++) {
+            LatencyHistogram histogram = histogram(slot);
+            if (histogram.count() == 0) {
+                continue;
+            }
+            all.add(histogram);
+            commands.append(commands.length() == 0 ? "" : ",")
+                    .append(String.format(Locale.ROOT,
+                            "\"%s\":{\"count\":%d,\"meanMicros\":%.2f,\"p50Micros\":%.2f,\"p99Micros\":%.2f,"
+                                    + "\"p999Micros\":%.2f,\"maxMicros\":%.2f,\"slowCount\":%d}",
+                            slotName(slot), histogram.count(), histogram.mean() / 1e3,
+                            histogram.percentile(0.5) / 1e3, histogram.percentile(0.99) / 1e3,
+                            histogram.percentile(0.999) / 1e3, histogram.max() / 1e3, slowCounts.get(slot)));
+        }
+        double uptime = uptimeSeconds();
+        json.append(String.format(Locale.ROOT, "{\"uptimeSeconds\":%.1f,\"operations\":%d,\"operationsPerSecond\":%.1f,",
+                uptime, all.count(), all.count() / uptime));
+        json.append("\"commands\":{").append(commands).append("}}\n");
+        return json.toString();
+    }
+
+    // Rewrites file with toJson() every intervalMillis, on a daemon thread
+    void startJsonDump(Path file, long intervalMillis) {
+        ScheduledExecutorService dumper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "gator-metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleWithFixedDelay(() -> {
+            try {
+                Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+                Files.writeString(temporary, toJson(), StandardCharsets.UTF_8);
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                System.err.println("Writing metrics to " + file + " failed: " + e.getMessage());
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,19 @@
+// JMX view of one command type's counters, registered as gator:type=Commands,name=<command>.
+// Latencies are in microseconds since the library started.
+public interface CommandStatsMBean {
+    long getCount();
+
+    double getOperationsPerSecond();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+
+    long getSlowCount();
+}
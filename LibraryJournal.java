@@ -0,0 +1,369 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+// Durability for a GatorLib: an append-only write-ahead log of the mutations that changed state,
+// plus periodic snapshots of the whole library. The data directory holds
+//   snapshot.bin  - a CatalogImage of the library as of journal sequence number S
+//   journal.log   - mutations after the last snapshot, each record tagged with its sequence number
+// Startup loads the snapshot and replays only the journal records newer than S.
+//
+// Record layout: int payloadLength, long sequence, byte type, payload, int CRC32 of sequence..payload.
+// Strings in a payload are an int byte length and the UTF-8 bytes, so a record holds any book the
+// library does. A torn or corrupt tail left by a crash is detected by its length or CRC and truncated
+// on recovery.
+//
+// Durability is configurable. syncEvery is how many records may be written but not yet fsynced, so 1
+// makes every mutation durable before its command returns. syncIntervalMillis additionally fsyncs on
+// a timer. Concurrent committers share one fsync (group commit): whoever finds no fsync running syncs
+// everything appended so far, and the others wait for it.
+class LibraryJournal implements Closeable {
+    static final byte INSERT_BOOK = 1;
+    static final byte BORROW_BOOK = 2;
+    static final byte RETURN_BOOK = 3;
+    static final byte DELETE_BOOK = 4;
+    static final byte CANCEL_RESERVATION = 5;
+    static final byte CHANGE_PRIORITY = 6;
+    static final byte BULK_LOAD = 7;     // Opens a bulk load: the tree inserts of the InsertBooks after it wait
+    static final byte END_BULK_LOAD = 8; // Builds the tree with them, at the same point as the live library did
+
+    private static final String JOURNAL_FILE = "journal.log";
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int RECORD_OVERHEAD = 4 + 8 + 1 + 4;
+
+    private final Path directory;
+    private final int syncEvery;
+    private final long snapshotEvery;
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE); // Larger only while it holds a record too big for it
+    private final CRC32 crc = new CRC32();
+    private final ScheduledExecutorService syncTimer;
+    private FileChannel channel;
+
+    private long appendedSequence; // Last sequence number handed out
+    private long writtenSequence;  // Last sequence number handed to the channel
+    private long syncedSequence;   // Last sequence number known to be on disk
+    private long snapshotSequence; // Sequence number the current snapshot includes
+    private boolean syncing;
+
+    LibraryJournal(Path directory, int syncEvery, long syncIntervalMillis, long snapshotEvery) {
+        this.directory = directory;
+        this.syncEvery = Math.max(1, syncEvery);
+        this.snapshotEvery = snapshotEvery;
+        if (syncIntervalMillis > 0) {
+            syncTimer = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "gator-journal-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncTimer.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            syncTimer = null;
+        }
+    }
+
+    // Loads the latest snapshot into library, replays the journal tail and opens the journal for
+    // appending. Must be called before the journal is attached to the library. Returns the number of
+    // journal records replayed.
+    long recover(GatorLib library) throws IOException {
+        Files.createDirectories(directory);
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshot)) {
+            snapshotSequence = CatalogImage.load(snapshot, library);
+        }
+        appendedSequence = snapshotSequence;
+
+        Path journal = directory.resolve(JOURNAL_FILE);
+        channel = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long replayed = 0;
+        long validLength = 0;
+        long journalLength = channel.size();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE))) {
+            byte[] payload = new byte[256];
+            while (true) {
+                int length;
+                long sequence;
+                byte type;
+                try {
+                    length = in.readInt();
+                    if (length < 0 || length > journalLength - validLength - RECORD_OVERHEAD) {
+                        break;
+                    }
+                    sequence = in.readLong();
+                    type = in.readByte();
+                    if (payload.length < length) {
+                        payload = new byte[Math.max(length, payload.length * 2)];
+                    }
+                    in.readFully(payload, 0, length);
+                    crc.reset();
+                    crc.update(ByteBuffer.allocate(9).putLong(sequence).put(type).flip());
+                    crc.update(payload, 0, length);
+                    if ((int) crc.getValue() != in.readInt()) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                validLength += RECORD_OVERHEAD + length;
+                // Records the snapshot already includes survive a crash between snapshot and truncation
+                if (sequence > snapshotSequence) {
+                    apply(library, type, new DataInputStream(new ByteArrayInputStream(payload, 0, length)));
+                    replayed++;
+                }
+                appendedSequence = Math.max(appendedSequence, sequence);
+            }
+        }
+        // The stream above closed the channel; reopen it and drop any torn tail
+        channel = FileChannel.open(journal, StandardOpenOption.WRITE);
+        channel.truncate(validLength);
+        channel.position(validLength);
+        writtenSequence = appendedSequence;
+        syncedSequence = appendedSequence;
+        return replayed;
+    }
+
+    // Re-applies one record to library; also used by Replica for change-stream records, which share
+    // these types and payloads
+    static void apply(GatorLib library, byte type, DataInputStream in) throws IOException {
+        switch (type) {
+            case INSERT_BOOK:
+                library.replayInsertBook(in.readInt(), readString(in), readString(in), readString(in));
+                break;
+            case BORROW_BOOK:
+                library.replayBorrowBook(in.readInt(), in.readInt(), in.readInt());
+                break;
+            case RETURN_BOOK:
+                library.replayReturnBook(in.readInt(), in.readInt());
+                break;
+            case DELETE_BOOK:
+                library.replayDeleteBook(in.readInt());
+                break;
+            case CANCEL_RESERVATION:
+                library.replayCancelReservation(in.readInt(), in.readInt());
+                break;
+            case CHANGE_PRIORITY:
+                library.replayChangePriority(in.readInt(), in.readInt(), in.readInt());
+                break;
+            case BULK_LOAD:
+                library.replayBulkLoad(in.readInt());
+                break;
+            case END_BULK_LOAD:
+                library.replayEndBulkLoad();
+                break;
+            default:
+                throw new IOException("Unknown journal record type " + type);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // The log methods are called while the caller still holds the locks that ordered the mutation, so
+    // journal order matches the order mutations were applied in.
+    public synchronized void logInsertBook(int bookID, String title, String author, String availabilityStatus) throws IOException {
+        byte[] titleBytes = encode(title);
+        byte[] authorBytes = encode(author);
+        byte[] availabilityBytes = encode(availabilityStatus);
+        int start = beginRecord(INSERT_BOOK, payloadLength(4 + 12, titleBytes, authorBytes, availabilityBytes));
+        buffer.putInt(bookID);
+        putString(titleBytes);
+        putString(authorBytes);
+        putString(availabilityBytes);
+        endRecord(start);
+    }
+
+    public synchronized void logBorrowBook(int patronID, int bookID, int patronPriority) throws IOException {
+        int start = beginRecord(BORROW_BOOK, 12);
+        buffer.putInt(patronID).putInt(bookID).putInt(patronPriority);
+        endRecord(start);
+    }
+
+    public synchronized void logReturnBook(int patronID, int bookID) throws IOException {
+        int start = beginRecord(RETURN_BOOK, 8);
+        buffer.putInt(patronID).putInt(bookID);
+        endRecord(start);
+    }
+
+    public synchronized void logDeleteBook(int bookID) throws IOException {
+        int start = beginRecord(DELETE_BOOK, 4);
+        buffer.putInt(bookID);
+        endRecord(start);
+    }
+
+    public synchronized void logCancelReservation(int patronID, int bookID) throws IOException {
+        int start = beginRecord(CANCEL_RESERVATION, 8);
+        buffer.putInt(patronID).putInt(bookID);
+        endRecord(start);
+    }
+
+    public synchronized void logChangePriority(int patronID, int bookID, int patronPriority) throws IOException {
+        int start = beginRecord(CHANGE_PRIORITY, 12);
+        buffer.putInt(patronID).putInt(bookID).putInt(patronPriority);
+        endRecord(start);
+    }
+
+    public synchronized void logBulkLoad(int expectedBooks) throws IOException {
+        int start = beginRecord(BULK_LOAD, 4);
+        buffer.putInt(expectedBooks);
+        endRecord(start);
+    }
+
+    public synchronized void logEndBulkLoad() throws IOException {
+        endRecord(beginRecord(END_BULK_LOAD, 0));
+    }
+
+    // UTF-8 bytes of text, encoded before a record is begun so its payload length is known
+    static byte[] encode(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // fixedBytes plus the strings, each with its length, as a record's payload length. Checked before a
+    // record is begun; only strings of about 2 GB between them fail it.
+    static int payloadLength(int fixedBytes, byte[]... strings) throws IOException {
+        long length = fixedBytes;
+        for (byte[] bytes : strings) {
+            length += bytes.length;
+        }
+        if (length > Integer.MAX_VALUE - RECORD_OVERHEAD - ChangeStream.RECORD_OVERHEAD) {
+            throw new IOException("Record too long: " + length + " bytes");
+        }
+        return (int) length;
+    }
+
+    // Int length followed by the UTF-8 bytes
+    private void putString(byte[] bytes) {
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    private int beginRecord(byte type, int payloadLength) throws IOException {
+        if (buffer.remaining() < RECORD_OVERHEAD + payloadLength) {
+            writeBuffer();
+            if (buffer.capacity() < RECORD_OVERHEAD + payloadLength) {
+                buffer = ByteBuffer.allocate(RECORD_OVERHEAD + payloadLength);
+            }
+        }
+        int start = buffer.position();
+        buffer.putInt(payloadLength).putLong(++appendedSequence).put(type);
+        return start;
+    }
+
+    private void endRecord(int start) {
+        crc.reset();
+        crc.update(buffer.array(), start + 4, buffer.position() - start - 4);
+        buffer.putInt((int) crc.getValue());
+    }
+
+    // Hands buffered records to the channel; caller holds the monitor
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer = buffer.capacity() > BUFFER_SIZE ? ByteBuffer.allocate(BUFFER_SIZE) : buffer.clear();
+        writtenSequence = appendedSequence;
+    }
+
+    // Makes appended records durable as far as the sync policy requires. Call after releasing the
+    // locks held while logging, so a slow fsync does not hold up other books.
+    public void commit() throws IOException {
+        sync(false);
+    }
+
+    private void sync(boolean force) throws IOException {
+        long target;
+        synchronized (this) {
+            if (!force && appendedSequence - syncedSequence < syncEvery) {
+                return;
+            }
+            target = appendedSequence;
+            while (syncing) {
+                if (syncedSequence >= target) {
+                    return;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted waiting for journal sync", e);
+                }
+            }
+            if (syncedSequence >= target) {
+                return;
+            }
+            syncing = true;
+            writeBuffer();
+            target = writtenSequence;
+        }
+        try {
+            // Records appended while this runs are picked up by the next sync
+            channel.force(false);
+        } finally {
+            synchronized (this) {
+                syncing = false;
+                syncedSequence = Math.max(syncedSequence, target);
+                notifyAll();
+            }
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync(true);
+        } catch (IOException e) {
+            System.err.println("Journal sync failed: " + e.getMessage());
+        }
+    }
+
+    public synchronized boolean snapshotDue() {
+        return snapshotEvery > 0 && appendedSequence - snapshotSequence >= snapshotEvery;
+    }
+
+    // Writes a snapshot of library and empties the journal. The caller must hold the library's
+    // catalog write lock, so no mutation can be logged while this runs.
+    void writeSnapshot(GatorLib library) throws IOException {
+        sync(true);
+        long sequence;
+        synchronized (this) {
+            sequence = appendedSequence;
+        }
+        CatalogImage.write(library, directory.resolve(SNAPSHOT_FILE), sequence);
+        synchronized (this) {
+            snapshotSequence = sequence;
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(true);
+        }
+    }
+
+    public void close() throws IOException {
+        if (syncTimer != null) {
+            syncTimer.shutdownNow();
+        }
+        synchronized (this) {
+            if (channel == null || !channel.isOpen()) {
+                return;
+            }
+        }
+        sync(true);
+        synchronized (this) {
+            channel.close();
+        }
+    }
+}
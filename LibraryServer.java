@@ -0,0 +1,191 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Serves the operation-file command grammar to many clients at once over a local socket. Each
+// connection sends newline-terminated commands and reads back exactly what the file mode would write
+// for them; Quit ends that connection only. All connections share one thread-safe GatorLib.
+class LibraryServer {
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+    private static final int MAX_LINE_LENGTH = 1 << 24;
+
+    private final GatorLib library;
+    private final SocketAddress address;
+    private final ExecutorService sessions = newSessionExecutor();
+
+    LibraryServer(GatorLib library, SocketAddress address) {
+        this.library = library;
+        this.address = address;
+    }
+
+    // A port number means TCP on the loopback interface, anything else is a Unix-domain socket path
+    static SocketAddress parseAddress(String spec) {
+        if (spec.chars().allMatch(Character::isDigit)) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(spec));
+        }
+        return UnixDomainSocketAddress.of(spec);
+    }
+
+    static SocketChannel connect(SocketAddress address) throws IOException {
+        SocketChannel channel = address instanceof UnixDomainSocketAddress
+                ? SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open();
+        channel.connect(address);
+        return channel;
+    }
+
+    // One virtual thread per connection where the runtime has them (JDK 21+), otherwise a cached pool
+    // of daemon platform threads
+    private static ExecutorService newSessionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger sessionCount = new AtomicInteger();
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "gator-session-" + sessionCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public void serve() throws IOException {
+        ServerSocketChannel server;
+        if (address instanceof UnixDomainSocketAddress) {
+            Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            server = ServerSocketChannel.open();
+        }
+        try (ServerSocketChannel listener = server) {
+            listener.bind(address);
+            System.out.println("Serving GatorLib on " + address);
+            while (true) {
+                SocketChannel client = listener.accept();
+                sessions.execute(() -> runSession(client));
+            }
+        }
+    }
+
+    private void runSession(SocketChannel client) {
+        OperationParser parser = new OperationParser();
+        AsciiLine line = new AsciiLine();
+        ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        try (ResponseWriter out = new ResponseWriter(client)) {
+            boolean open = true;
+            while (open && client.read(in) >= 0) {
+                int lineStart = 0;
+                int nonAscii = 0;
+                int end = in.position();
+                for (int i = 0; i < end && open; i++) {
+                    byte b = in.get(i);
+                    if (b == '\n') {
+                        int lineEnd = i > lineStart && in.get(i - 1) == '\r' ? i - 1 : i;
+                        if (nonAscii < 0) {
+                            byte[] bytes = new byte[lineEnd - lineStart];
+                            in.get(lineStart, bytes);
+                            open = library.processOperation(parser, new String(bytes, StandardCharsets.UTF_8), out);
+                        } else {
+                            open = library.processOperation(parser, line.wrap(in, lineStart, lineEnd), out);
+                        }
+                        lineStart = i + 1;
+                        nonAscii = 0;
+                    } else {
+                        nonAscii |= b;
+                    }
+                }
+                // Answer everything received so far before waiting for more input
+                out.flush();
+                in.flip();
+                in.position(lineStart);
+                in.compact();
+                if (!in.hasRemaining()) {
+                    if (in.capacity() >= MAX_LINE_LENGTH) {
+                        out.write("Line longer than " + MAX_LINE_LENGTH + " bytes, closing connection\n");
+                        break;
+                    }
+                    ByteBuffer larger = ByteBuffer.allocate(in.capacity() * 2);
+                    in.flip();
+                    larger.put(in);
+                    in = larger;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Session ended: " + e.getMessage());
+        }
+    }
+
+    // Load generator for measuring throughput scaling: each connection owns a disjoint block of books,
+    // inserts them, then alternates BorrowBook and ReturnBook across its block. Responses are drained
+    // on a separate thread so the client never stalls the server.
+    static void runLoad(SocketAddress address, int connections, int operationsPerConnection) throws Exception {
+        int booksPerConnection = 1000;
+        Thread[] readers = new Thread[connections];
+        SocketChannel[] channels = new SocketChannel[connections];
+        for (int c = 0; c < connections; c++) {
+            channels[c] = connect(address);
+            SocketChannel channel = channels[c];
+            readers[c] = new Thread(() -> {
+                ByteBuffer sink = ByteBuffer.allocate(READ_BUFFER_SIZE);
+                try {
+                    while (channel.read(sink) >= 0) {
+                        sink.clear();
+                    }
+                } catch (IOException ignored) {
+                    // Connection closed
+                }
+            });
+        }
+        Thread[] writers = new Thread[connections];
+        for (int c = 0; c < connections; c++) {
+            int firstBook = c * booksPerConnection;
+            SocketChannel channel = channels[c];
+            writers[c] = new Thread(() -> {
+                // Not closed here: closing the writer would close the channel under the reader
+                ResponseWriter requests = new ResponseWriter(channel);
+                try {
+                    for (int b = 0; b < booksPerConnection; b++) {
+                        requests.write("InsertBook(" + (firstBook + b) + ", \"Load\", \"Client\", \"Yes\")\n");
+                    }
+                    for (int i = 0; i < operationsPerConnection; i++) {
+                        int bookID = firstBook + (i >> 1) % booksPerConnection;
+                        requests.write((i & 1) == 0 ? "BorrowBook(" : "ReturnBook(");
+                        // Both halves of a pair come from one patron, or the return would be refused
+                        requests.write(1 + (i >> 1) % 97);
+                        requests.write(", ");
+                        requests.write(bookID);
+                        requests.write((i & 1) == 0 ? ", 1)\n" : ")\n");
+                    }
+                    requests.write("Quit()\n");
+                    requests.flush();
+                    channel.shutdownOutput();
+                } catch (IOException e) {
+                    System.err.println("Load connection failed: " + e.getMessage());
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for (int c = 0; c < connections; c++) {
+            readers[c].start();
+            writers[c].start();
+        }
+        for (int c = 0; c < connections; c++) {
+            writers[c].join();
+            readers[c].join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long operations = (long) connections * (operationsPerConnection + booksPerConnection);
+        System.out.printf("%d connections, %d operations in %.2f s: %.0f ops/sec%n",
+                connections, operations, seconds, operations / seconds);
+    }
+}
@@ -0,0 +1,314 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+// Node storage for RedBlackTree. A node is a slot number. Its links are one 16-byte record of four ints
+// in a flat array - key, left, right and parent, with the colour in the low bit of the parent field -
+// so everything a search reads at a node shares a cache line. Subtree sizes, read only by rank,
+// select and the size updates on insert and delete, sit in a parallel array of their own, and so do
+// subtree heights, kept for TreeStats. Slot 0 is nil: links of 0 mean no node, and nil reads as black
+// with size and height 0 because it is never written. Deleted slots are chained through their left
+// field and handed out again before the array grows. The tree holds no per-node objects, so at tens
+// of millions of keys the collector has three int[]s to skip rather than a graph to trace; the
+// off-heap store moves even those out of the heap.
+abstract class NodeStore {
+    static final int NIL = 0;
+    private static final int FIELDS = 4;
+    private static final int KEY = 0;
+    private static final int LEFT = 1;
+    private static final int RIGHT = 2;
+    private static final int PARENT = 3;
+    private static final int RED = 1;
+
+    private final int maxSlots; // Slots the largest backing array can hold, nil included
+    private int capacity;    // Slots the backing array has room for
+    private int allocated = 1; // Slots handed out at some point, nil included
+    private int freeList = NIL;
+
+    static NodeStore onHeap() {
+        return new Heap();
+    }
+
+    static NodeStore offHeap() {
+        return new Direct();
+    }
+
+    NodeStore(int maxSlots) {
+        this.maxSlots = maxSlots;
+        capacity = 16;
+        allocate(capacity);
+    }
+
+    abstract int get(int index);
+
+    abstract void set(int index, int value);
+
+    abstract int size(int node);
+
+    abstract void setSize(int node, int size);
+
+    abstract int height(int node);
+
+    abstract void setHeight(int node, int height);
+
+    // Replaces the backing arrays with empty ones for capacity slots, or ones holding the old contents
+    abstract void allocate(int capacity);
+
+    abstract void copyTo(int capacity);
+
+    // Whether the next newNode has to grow the array
+    boolean isFull() {
+        return freeList == NIL && allocated == capacity;
+    }
+
+    // Doubles the capacity, moving the tree under root into the new array in preorder, and returns the
+    // new root slot. A search then usually finds a left child on the same cache line as its parent and
+    // the upper levels packed together, where insertion order leaves them scattered; freed slots are
+    // squeezed out too. Node slots held elsewhere are invalid afterwards.
+    int grow(int root) {
+        if (capacity == maxSlots) {
+            throw full();
+        }
+        int[] order = new int[allocated]; // Old slots in preorder
+        int count = 0;
+        int[] stack = new int[64];
+        int depth = 0;
+        if (root != NIL) {
+            stack[depth++] = root;
+        }
+        while (depth > 0) {
+            int node = stack[--depth];
+            order[count++] = node;
+            if (depth + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            if (right(node) != NIL) {
+                stack[depth++] = right(node);
+            }
+            if (left(node) != NIL) {
+                stack[depth++] = left(node);
+            }
+        }
+        int[] records = new int[count * FIELDS];
+        int[] sizes = new int[count];
+        int[] heights = new int[count];
+        for (int i = 0; i < count; i++) {
+            int base = order[i] * FIELDS;
+            for (int f = 0; f < FIELDS; f++) {
+                records[i * FIELDS + f] = get(base + f);
+            }
+            sizes[i] = size(order[i]);
+            heights[i] = height(order[i]);
+        }
+        int[] newSlot = new int[allocated];
+        for (int i = 0; i < count; i++) {
+            newSlot[order[i]] = i + 1;
+        }
+        capacity = (int) Math.min(maxSlots, 2L * capacity);
+        allocate(capacity);
+        for (int i = 0; i < count; i++) {
+            int from = i * FIELDS;
+            int base = (i + 1) * FIELDS;
+            set(base + KEY, records[from + KEY]);
+            set(base + LEFT, newSlot[records[from + LEFT]]);
+            set(base + RIGHT, newSlot[records[from + RIGHT]]);
+            int parent = records[from + PARENT];
+            set(base + PARENT, newSlot[parent >>> 1] << 1 | (parent & RED));
+            setSize(i + 1, sizes[i]);
+            setHeight(i + 1, heights[i]);
+        }
+        allocated = count + 1;
+        freeList = NIL;
+        return count == 0 ? NIL : 1;
+    }
+
+    // A fresh node holding key, with no links and size and height 1
+    int newNode(int key, boolean red) {
+        int node = freeList;
+        if (node != NIL) {
+            freeList = get(node * FIELDS + LEFT);
+        } else {
+            if (allocated == capacity) {
+                if (capacity == maxSlots) {
+                    throw full();
+                }
+                capacity = (int) Math.min(maxSlots, 2L * capacity);
+                copyTo(capacity);
+            }
+            node = allocated++;
+        }
+        int base = node * FIELDS;
+        set(base + KEY, key);
+        set(base + LEFT, NIL);
+        set(base + RIGHT, NIL);
+        set(base + PARENT, red ? RED : 0);
+        setSize(node, 1);
+        setHeight(node, 1);
+        return node;
+    }
+
+    void free(int node) {
+        set(node * FIELDS + LEFT, freeList);
+        freeList = node;
+    }
+
+    // Drops every node and makes room for count of them, for rebuilding a tree from scratch
+    void clear(int count) {
+        if (count >= maxSlots) {
+            throw full();
+        }
+        allocated = 1;
+        freeList = NIL;
+        capacity = Math.max(16, count + 1);
+        allocate(capacity);
+    }
+
+    private IllegalStateException full() {
+        return new IllegalStateException("Red-black tree is full at " + (maxSlots - 1) + " nodes");
+    }
+
+    int key(int node) {
+        return get(node * FIELDS + KEY);
+    }
+
+    void setKey(int node, int key) {
+        set(node * FIELDS + KEY, key);
+    }
+
+    int left(int node) {
+        return get(node * FIELDS + LEFT);
+    }
+
+    void setLeft(int node, int left) {
+        set(node * FIELDS + LEFT, left);
+    }
+
+    int right(int node) {
+        return get(node * FIELDS + RIGHT);
+    }
+
+    void setRight(int node, int right) {
+        set(node * FIELDS + RIGHT, right);
+    }
+
+    int parent(int node) {
+        return get(node * FIELDS + PARENT) >>> 1;
+    }
+
+    void setParent(int node, int parent) {
+        int index = node * FIELDS + PARENT;
+        set(index, parent << 1 | (get(index) & RED));
+    }
+
+    boolean isRed(int node) {
+        return (get(node * FIELDS + PARENT) & RED) != 0;
+    }
+
+    void setRed(int node, boolean red) {
+        int index = node * FIELDS + PARENT;
+        set(index, red ? get(index) | RED : get(index) & ~RED);
+    }
+
+    private static final class Heap extends NodeStore {
+        private int[] fields;
+        private int[] sizes;
+        private int[] heights;
+
+        Heap() {
+            super(Integer.MAX_VALUE / FIELDS);
+        }
+
+        int get(int index) {
+            return fields[index];
+        }
+
+        void set(int index, int value) {
+            fields[index] = value;
+        }
+
+        int size(int node) {
+            return sizes[node];
+        }
+
+        void setSize(int node, int size) {
+            sizes[node] = size;
+        }
+
+        int height(int node) {
+            return heights[node];
+        }
+
+        void setHeight(int node, int height) {
+            heights[node] = height;
+        }
+
+        void allocate(int capacity) {
+            fields = new int[capacity * FIELDS];
+            sizes = new int[capacity];
+            heights = new int[capacity];
+        }
+
+        void copyTo(int capacity) {
+            fields = Arrays.copyOf(fields, capacity * FIELDS);
+            sizes = Arrays.copyOf(sizes, capacity);
+            heights = Arrays.copyOf(heights, capacity);
+        }
+    }
+
+    // Records in native-order direct memory; a replaced buffer is freed once the collector finds it.
+    // A buffer holds at most Integer.MAX_VALUE bytes, so this store has a quarter of Heap's slots.
+    private static final class Direct extends NodeStore {
+        private IntBuffer fields;
+        private IntBuffer sizes;
+        private IntBuffer heights;
+
+        Direct() {
+            super(Integer.MAX_VALUE / (FIELDS * Integer.BYTES));
+        }
+
+        int get(int index) {
+            return fields.get(index);
+        }
+
+        void set(int index, int value) {
+            fields.put(index, value);
+        }
+
+        int size(int node) {
+            return sizes.get(node);
+        }
+
+        void setSize(int node, int size) {
+            sizes.put(node, size);
+        }
+
+        int height(int node) {
+            return heights.get(node);
+        }
+
+        void setHeight(int node, int height) {
+            heights.put(node, height);
+        }
+
+        void allocate(int capacity) {
+            fields = ints(capacity * FIELDS);
+            sizes = ints(capacity);
+            heights = ints(capacity);
+        }
+
+        void copyTo(int capacity) {
+            IntBuffer oldFields = fields;
+            IntBuffer oldSizes = sizes;
+            IntBuffer oldHeights = heights;
+            allocate(capacity);
+            fields.put(oldFields.clear()).clear();
+            sizes.put(oldSizes.clear()).clear();
+            heights.put(oldHeights.clear()).clear();
+        }
+
+        private static IntBuffer ints(int count) {
+            return ByteBuffer.allocateDirect(Math.multiplyExact(count, Integer.BYTES)).order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+    }
+}
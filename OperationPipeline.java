@@ -0,0 +1,318 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Pipelined file mode. The calling thread reads and parses lines into a ring of preallocated slots.
+// Executor threads apply them to the library in file order, rendering each response into its slot's
+// in-memory writer. A writer thread copies finished responses to the output in the same order, so all
+// file I/O happens there. Each stage publishes how many lines it has finished and waits only on the
+// stage before it, or for the reader, on the writer freeing a slot. So reading and parsing, execution,
+// and output overlap, and throughput is bounded by the slowest stage.
+//
+// With a PartitionedLibrary there is one executor per partition. Each executor walks every slot and
+// runs the commands routed to its partition, so commands on one partition run in file order, and
+// commands on different partitions touch disjoint books and may run in parallel. A command spanning
+// partitions is a barrier for them: each participant waits at it, and the last to arrive runs it
+// while the others hold still. A slot is written once every executor has passed it. So the output
+// is byte for byte what the serial mode writes, apart from the ColorFlipCount values noted on
+// PartitionedLibrary.
+class OperationPipeline {
+    private static final int SLOTS = 1 << 10;
+    private static final int MASK = SLOTS - 1;
+    // Progress is published every BATCH lines, and whenever a stage runs out of work, so a waiting
+    // stage is woken once per batch rather than once per line
+    private static final int BATCH = 1 << 8;
+    private static final int RESPONSE_SIZE = 256;
+    private static final int MAX_RETAINED_RESPONSE = 1 << 16;
+    private static final int SPIN_LIMIT = 1000;
+
+    private static final class Slot {
+        final OperationParser parser = new OperationParser();
+        String line;
+        boolean parsed;
+        int firstPartition;
+        int lastPartition;
+        // For a command spanning partitions: participants yet to arrive, and whether it has run
+        final AtomicInteger arrivals = new AtomicInteger();
+        volatile boolean executed;
+        boolean open;
+        ResponseWriter response = ResponseWriter.inMemory(RESPONSE_SIZE);
+    }
+
+    // How many lines a stage has finished, and once it stops, the most it will ever finish. The next
+    // stage's threads park on it when they have caught up, each in its own waiter slot, and are
+    // unparked when more is published.
+    private static final class Progress {
+        final AtomicLong count = new AtomicLong();
+        volatile long end = Long.MAX_VALUE;
+        final AtomicReferenceArray<Thread> waiters;
+
+        Progress(int consumers) {
+            waiters = new AtomicReferenceArray<>(consumers);
+        }
+
+        void publish(long finished) {
+            count.set(finished);
+            wake();
+        }
+
+        void finish(long finished) {
+            count.set(finished);
+            end = finished;
+            wake();
+        }
+
+        void wake() {
+            for (int i = 0; i < waiters.length(); i++) {
+                Thread thread = waiters.get(i);
+                if (thread != null) {
+                    LockSupport.unpark(thread);
+                }
+            }
+        }
+    }
+
+    private final PartitionedLibrary library;
+    private final Slot[] slots = new Slot[SLOTS];
+    private final Progress[] parsed;
+    private final Progress[] executed;
+    private final Progress[] written = {new Progress(1)};
+    private final Thread[] executors;
+    // Spinning only pays when every thread has a core to itself
+    private final boolean spin;
+    private volatile Throwable failure;
+    private volatile boolean quit;
+
+    OperationPipeline(GatorLib library) {
+        this(new PartitionedLibrary(library));
+    }
+
+    OperationPipeline(PartitionedLibrary library) {
+        this.library = library;
+        for (int i = 0; i < SLOTS; i++) {
+            slots[i] = new Slot();
+        }
+        int partitions = library.partitions.length;
+        parsed = new Progress[] {new Progress(partitions)};
+        executed = new Progress[partitions];
+        executors = new Thread[partitions];
+        for (int p = 0; p < partitions; p++) {
+            int partition = p;
+            executed[p] = new Progress(1);
+            executors[p] = new Thread(() -> execute(partition),
+                    partitions == 1 ? "gator-pipeline-execute" : "gator-pipeline-execute-" + p);
+        }
+        spin = Runtime.getRuntime().availableProcessors() >= partitions + 2;
+    }
+
+    // Runs every line of in through the library, writing responses to out. Returns true if the input
+    // ended with Quit, whose response is the last one written.
+    boolean run(BufferedReader in, ResponseWriter out) throws IOException {
+        Thread writer = new Thread(() -> write(out), "gator-pipeline-write");
+        for (Thread executor : executors) {
+            executor.start();
+        }
+        writer.start();
+        long sequence = 0;
+        try {
+            String line;
+            while (!quit && failure == null && (line = in.readLine()) != null) {
+                if (written[0].count.get() <= sequence - SLOTS) {
+                    parsed[0].publish(sequence);
+                    if (await(written, 0, sequence - SLOTS) < 0) {
+                        break;
+                    }
+                }
+                Slot slot = slots[(int) sequence & MASK];
+                slot.line = line;
+                slot.parsed = slot.parser.parse(line);
+                slot.firstPartition = library.firstPartition(slot.parser, slot.parsed);
+                slot.lastPartition = library.lastPartition(slot.parser, slot.parsed);
+                if (slot.firstPartition != slot.lastPartition) {
+                    slot.arrivals.set(slot.lastPartition - slot.firstPartition + 1);
+                    slot.executed = false;
+                }
+                if ((++sequence & (BATCH - 1)) == 0) {
+                    parsed[0].publish(sequence);
+                }
+            }
+        } catch (Throwable e) {
+            fail(e);
+        } finally {
+            parsed[0].finish(sequence);
+        }
+        for (Thread executor : executors) {
+            join(executor);
+        }
+        join(writer);
+        if (failure != null) {
+            throw failure instanceof IOException ? (IOException) failure : new IOException(failure);
+        }
+        return quit;
+    }
+
+    private void execute(int partition) {
+        Progress progress = executed[partition];
+        GatorLib own = library.partitions[partition];
+        long sequence = 0;
+        try {
+            while (true) {
+                long available = await(parsed, partition, sequence);
+                if (available < 0) {
+                    break;
+                }
+                while (sequence < available) {
+                    Slot slot = slots[(int) sequence & MASK];
+                    boolean open = true;
+                    if (slot.firstPartition == slot.lastPartition) {
+                        if (slot.firstPartition == partition) {
+                            open = own.processParsed(slot.parser, slot.parsed, slot.line, slot.response);
+                        }
+                    } else if (slot.firstPartition <= partition && partition <= slot.lastPartition) {
+                        // Let the writer have everything before the barrier while this executor waits at it
+                        progress.publish(sequence);
+                        open = executeAcross(slot);
+                    }
+                    sequence++;
+                    if (!open) {
+                        quit = true;
+                        return;
+                    }
+                    if ((sequence & (BATCH - 1)) == 0) {
+                        progress.publish(sequence);
+                    }
+                }
+                progress.publish(sequence);
+            }
+        } catch (Throwable e) {
+            fail(e);
+        } finally {
+            progress.finish(sequence);
+        }
+    }
+
+    // Barrier for a command spanning partitions: the last participant to arrive runs it
+    private boolean executeAcross(Slot slot) throws IOException {
+        if (slot.arrivals.decrementAndGet() == 0) {
+            slot.open = library.executeAcross(slot.firstPartition, slot.lastPartition, slot.parser, slot.line, slot.response);
+            slot.executed = true;
+            for (int p = slot.firstPartition; p <= slot.lastPartition; p++) {
+                LockSupport.unpark(executors[p]);
+            }
+            return slot.open;
+        }
+        for (int spins = 0; !slot.executed; spins++) {
+            if (failure != null) {
+                return false;
+            }
+            if (spin && spins < SPIN_LIMIT) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.park(this);
+            }
+        }
+        return slot.open;
+    }
+
+    private void write(ResponseWriter out) {
+        long sequence = 0;
+        try {
+            while (true) {
+                long available = await(executed, 0, sequence);
+                if (available < 0) {
+                    break;
+                }
+                while (sequence < available) {
+                    Slot slot = slots[(int) sequence & MASK];
+                    slot.response.transferTo(out);
+                    if (slot.response.capacity() > MAX_RETAINED_RESPONSE) {
+                        // Do not keep a huge PrintBooks buffer alive in every slot it passes through
+                        slot.response = ResponseWriter.inMemory(RESPONSE_SIZE);
+                    }
+                    if ((++sequence & (BATCH - 1)) == 0) {
+                        written[0].publish(sequence);
+                    }
+                }
+                written[0].publish(sequence);
+            }
+        } catch (Throwable e) {
+            fail(e);
+        } finally {
+            written[0].finish(sequence);
+        }
+    }
+
+    // Waits, as the stage's consumer number consumer, until every one of the stage's threads has passed
+    // sequence and returns the smallest of their counts, or returns -1 once one of them has ended at
+    // or before sequence, or any stage has failed. A thread sets its end only after publishing its
+    // last count, so seeing the end means nothing more will arrive.
+    private long await(Progress[] stage, int consumer, long sequence) {
+        for (int spins = 0; ; spins++) {
+            long available = available(stage);
+            if (available > sequence) {
+                return available;
+            }
+            for (Progress progress : stage) {
+                if (progress.end <= sequence) {
+                    return -1;
+                }
+            }
+            if (failure != null) {
+                return -1;
+            }
+            if (spin && spins < SPIN_LIMIT) {
+                Thread.onSpinWait();
+                continue;
+            }
+            for (Progress progress : stage) {
+                progress.waiters.set(consumer, Thread.currentThread());
+            }
+            // Re-check after announcing ourselves, so a publish in between is not missed
+            if (available(stage) <= sequence && failure == null) {
+                LockSupport.park(this);
+            }
+            for (Progress progress : stage) {
+                progress.waiters.set(consumer, null);
+            }
+        }
+    }
+
+    private static long available(Progress[] stage) {
+        long available = Long.MAX_VALUE;
+        for (Progress progress : stage) {
+            available = Math.min(available, progress.count.get());
+        }
+        return available;
+    }
+
+    private void fail(Throwable e) {
+        if (failure == null) {
+            failure = e;
+        }
+        for (Progress[] stage : new Progress[][] {parsed, executed, written}) {
+            for (Progress progress : stage) {
+                progress.wake();
+            }
+        }
+        for (Thread executor : executors) {
+            LockSupport.unpark(executor);
+        }
+    }
+
+    private static void join(Thread thread) {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+import java.io.IOException;
+
+// A catalog split into partitions by book ID range, each partition a GatorLib of its own, for the
+// partitioned pipeline mode. Partition i owns IDs [i * width, (i + 1) * width); IDs below 0 belong to
+// the first partition and IDs past maxBookID to the last. Commands naming one book go to the
+// partition that owns it. PrintBooks, FindClosestBook, FindBooksByAuthor, SearchTitle, PrintPatron,
+// ColorFlipCount, BulkLoad, TreeStats of the whole catalog and Quit involve several partitions;
+// OperationPipeline holds every partition involved at the command, then runs it once through
+// executeAcross.
+//
+// Each partition grows its own smaller tree, so ColorFlipCount reports the sum of the partitions'
+// counts, which differs from the count of one tree holding every book, and TreeStats reports each
+// partition's tree in turn. All other output matches.
+class PartitionedLibrary {
+    final GatorLib[] partitions;
+    private final long width;
+
+    // The whole catalog in one partition, as the unpartitioned pipeline uses it
+    PartitionedLibrary(GatorLib library) {
+        partitions = new GatorLib[] {library};
+        width = Long.MAX_VALUE;
+    }
+
+    // renderCacheEntries is shared out evenly between the partitions' render caches
+    PartitionedLibrary(int count, int maxBookID, boolean offHeapTree, int renderCacheEntries) {
+        partitions = new GatorLib[count];
+        for (int i = 0; i < count; i++) {
+            partitions[i] = new GatorLib(offHeapTree, (renderCacheEntries + count - 1) / count);
+        }
+        width = Math.max(1, ((long) maxBookID + 1 + count - 1) / count);
+    }
+
+    int partitionOf(int bookID) {
+        return (int) Math.min(partitions.length - 1, Math.max(0, bookID) / width);
+    }
+
+    int firstPartition(OperationParser parser, boolean parsed) {
+        if (!parsed) {
+            return 0;
+        }
+        int[] args = parser.intArgs;
+        switch (parser.type) {
+            case INSERT_BOOK:
+            case PRINT_BOOK:
+            case DELETE_BOOK:
+            case PRINT_BOOKS:
+            case COUNT_BOOKS:
+                return partitionOf(args[0]);
+            case BORROW_BOOK:
+            case RETURN_BOOK:
+            case CANCEL_RESERVATION:
+            case CHANGE_PRIORITY:
+                return partitionOf(args[1]);
+            case TREE_STATS:
+                return parser.argCount > 0 ? partitionOf(args[0]) : 0;
+            default:
+                return 0;
+        }
+    }
+
+    int lastPartition(OperationParser parser, boolean parsed) {
+        if (!parsed) {
+            return 0;
+        }
+        switch (parser.type) {
+            case PRINT_BOOKS:
+            case COUNT_BOOKS:
+                // An empty range prints nothing, whichever single partition it goes to
+                return Math.max(partitionOf(parser.intArgs[0]), partitionOf(parser.intArgs[1]));
+            case FIND_CLOSEST_BOOK:
+            case COLOR_FLIP_COUNT:
+            case BULK_LOAD:
+            case EXPORT_CATALOG:
+            case FIND_BOOKS_BY_AUTHOR:
+            case SEARCH_TITLE:
+            case PRINT_PATRON:
+            case QUIT:
+                return partitions.length - 1;
+            case TREE_STATS:
+                return parser.argCount > 0 ? firstPartition(parser, true) : partitions.length - 1;
+            default:
+                return firstPartition(parser, true);
+        }
+    }
+
+    // Runs a command spanning partitions first..last. The caller guarantees that none of them is
+    // executing anything else meanwhile. Returns false once Quit has been answered.
+    boolean executeAcross(int first, int last, OperationParser parser, CharSequence operation, ResponseWriter out) throws IOException {
+        // As in GatorLib, any command other than InsertBook first completes an open bulk load
+        for (int p = first; p <= last; p++) {
+            partitions[p].endBulkLoad();
+        }
+        switch (parser.type) {
+            case PRINT_BOOKS:
+                // Partitions hold ascending ID ranges, so their pieces concatenate in ID order. A page
+                // skips whole partitions by their counts until it reaches its offset.
+                int[] args = parser.intArgs;
+                long offset = parser.argCount > 2 ? args[2] : 0;
+                long limit = parser.argCount > 3 ? args[3] : Integer.MAX_VALUE;
+                for (int p = first; p <= last && limit > 0 && offset >= 0; p++) {
+                    int inRange = partitions[p].countBooks(args[0], args[1]);
+                    if (offset >= inRange) {
+                        offset -= inRange;
+                        continue;
+                    }
+                    limit -= partitions[p].printBooks(args[0], args[1], (int) offset, (int) limit, out);
+                    offset = 0;
+                }
+                return true;
+            case COUNT_BOOKS:
+                long count = 0;
+                for (int p = first; p <= last; p++) {
+                    count += partitions[p].countBooks(parser.intArgs[0], parser.intArgs[1]);
+                }
+                partitions[first].writeBookCount(count, out);
+                return true;
+            case FIND_CLOSEST_BOOK:
+                findClosestBook(parser.intArgs[0], out);
+                return true;
+            case COLOR_FLIP_COUNT:
+                long flips = 0;
+                for (GatorLib partition : partitions) {
+                    flips += partition.totalColorFlipCount();
+                }
+                out.write("\nColour Flip Count: ");
+                out.write((int) flips);
+                out.write("\n");
+                return true;
+            case BULK_LOAD:
+                int share = parser.intArgs[0] / partitions.length + 1;
+                for (GatorLib partition : partitions) {
+                    partition.bulkLoad(share);
+                }
+                return true;
+            case FIND_BOOKS_BY_AUTHOR:
+            case SEARCH_TITLE:
+                findMatches(parser, out);
+                return true;
+            case PRINT_PATRON:
+                // Each partition knows the patron's books in its own ID range
+                int[][] patronBooks = partitions[0].patronBooks(parser.intArgs[0]);
+                for (int p = 1; p < partitions.length; p++) {
+                    patronBooks = PatronIndex.concat(patronBooks, partitions[p].patronBooks(parser.intArgs[0]));
+                }
+                partitions[0].printPatron(parser.intArgs[0], patronBooks, out);
+                return true;
+            case EXPORT_CATALOG:
+                out.write("\nExportCatalog is not supported with --partitions\n");
+                return true;
+            case TREE_STATS:
+                for (int p = first; p <= last; p++) {
+                    partitions[p].treeStats().write("Tree Stats, partition " + p + ":", out);
+                }
+                return true;
+            default:
+                return partitions[first].processParsed(parser, true, operation, out);
+        }
+    }
+
+    // Each partition's matches are ascending and the partitions hold ascending ID ranges, so asking
+    // them in order for what is left of the limit prints the lowest matching IDs, as GatorLib does
+    private void findMatches(OperationParser parser, ResponseWriter out) throws IOException {
+        String query = parser.stringArgs[0];
+        int limit = parser.intArgs[1];
+        int[][] found = new int[partitions.length][];
+        int count = 0;
+        for (int p = 0; p < partitions.length; p++) {
+            found[p] = parser.type == OperationType.SEARCH_TITLE
+                    ? partitions[p].searchTitle(query, limit - count)
+                    : partitions[p].findBooksByAuthor(query, limit - count);
+            count += found[p].length;
+        }
+        if (count == 0) {
+            partitions[0].printMatches(found[0], out);
+            return;
+        }
+        for (int p = 0; p < partitions.length; p++) {
+            for (int bookID : found[p]) {
+                partitions[p].printBook(bookID, out);
+            }
+        }
+    }
+
+    // The nearest book may sit in a neighbouring partition, so floor and ceiling are searched outward
+    // from the partition that owns bookID, then printed as GatorLib.findClosestBook would
+    private void findClosestBook(int bookID, ResponseWriter out) throws IOException {
+        int home = partitionOf(bookID);
+        long lower = RedBlackTree.NO_KEY;
+        for (int p = home; p >= 0 && lower == RedBlackTree.NO_KEY; p--) {
+            lower = partitions[p].tree().floorKey(bookID);
+        }
+        if (lower == bookID) {
+            partitions[home].printBook(bookID, out);
+            return;
+        }
+        long higher = RedBlackTree.NO_KEY;
+        for (int p = home; p < partitions.length && higher == RedBlackTree.NO_KEY; p++) {
+            higher = partitions[p].tree().ceilingKey(bookID);
+        }
+        long lowerGap = lower == RedBlackTree.NO_KEY ? Long.MAX_VALUE : bookID - lower;
+        long higherGap = higher == RedBlackTree.NO_KEY ? Long.MAX_VALUE : higher - bookID;
+        if (lower != RedBlackTree.NO_KEY && lowerGap <= higherGap) {
+            partitions[partitionOf((int) lower)].printBook((int) lower, out);
+        }
+        if (higher != RedBlackTree.NO_KEY && higherGap <= lowerGap) {
+            partitions[partitionOf((int) higher)].printBook((int) higher, out);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Which books each patron has borrowed and reserved, kept up to date by GatorLib as borrows, returns,
+// cancellations and deletions change the books. Updates come from commands on different books at
+// once, each under its own book lock, so every read and update of a patron runs inside the map's
+// per-key compute. A patron with nothing borrowed or reserved has no entry.
+class PatronIndex {
+    private final ConcurrentHashMap<Integer, Patron> patrons = new ConcurrentHashMap<>();
+
+    private static final class Patron {
+        final CatalogIndex.IdSet borrowed = new CatalogIndex.IdSet();
+        final CatalogIndex.IdSet reserved = new CatalogIndex.IdSet();
+
+        Patron orNullIfEmpty() {
+            return borrowed.size() == 0 && reserved.size() == 0 ? null : this;
+        }
+    }
+
+    void borrowed(int patronID, int bookID) {
+        patrons.compute(patronID, (id, patron) -> {
+            Patron updated = patron == null ? new Patron() : patron;
+            updated.borrowed.add(bookID);
+            return updated;
+        });
+    }
+
+    void returned(int patronID, int bookID) {
+        patrons.computeIfPresent(patronID, (id, patron) -> {
+            patron.borrowed.remove(bookID);
+            return patron.orNullIfEmpty();
+        });
+    }
+
+    void reserved(int patronID, int bookID) {
+        patrons.compute(patronID, (id, patron) -> {
+            Patron updated = patron == null ? new Patron() : patron;
+            updated.reserved.add(bookID);
+            return updated;
+        });
+    }
+
+    void unreserved(int patronID, int bookID) {
+        patrons.computeIfPresent(patronID, (id, patron) -> {
+            patron.reserved.remove(bookID);
+            return patron.orNullIfEmpty();
+        });
+    }
+
+    // IDs of the books patronID has borrowed and has reserved, each ascending
+    int[][] booksOf(int patronID) {
+        int[][] books = {new int[0], new int[0]};
+        patrons.computeIfPresent(patronID, (id, patron) -> {
+            books[0] = toArray(patron.borrowed);
+            books[1] = toArray(patron.reserved);
+            return patron;
+        });
+        return books;
+    }
+
+    private static int[] toArray(CatalogIndex.IdSet ids) {
+        int[] array = new int[ids.size()];
+        PrimitiveIterator.OfInt iterator = ids.iterator();
+        for (int i = 0; i < array.length; i++) {
+            array[i] = iterator.nextInt();
+        }
+        return array;
+    }
+
+    // Appends the books of patronID held in another index, whose IDs are all above those here
+    static int[][] concat(int[][] lower, int[][] higher) {
+        return new int[][] {concat(lower[0], higher[0]), concat(lower[1], higher[1])};
+    }
+
+    private static int[] concat(int[] lower, int[] higher) {
+        int[] joined = Arrays.copyOf(lower, lower.length + higher.length);
+        System.arraycopy(higher, 0, joined, lower.length, higher.length);
+        return joined;
+    }
+}
@@ -0,0 +1,190 @@
+import java.util.NoSuchElementException;
+
+// Immutable weight-balanced search tree of books by ID, the catalog index that snapshots read. An
+// insert or delete copies only the O(log n) nodes on the path to the change and shares the rest, so
+// holding on to a root keeps that version of the index intact for as long as a reader needs it, and
+// versions no reader holds are left to the garbage collector.
+//
+// The mutable RedBlackTree stays the index that commands update in place: ColorFlipCount reports the
+// flips of its in-place rotations, which a path-copying tree would not reproduce. Balance here is by
+// subtree size (Adams' weight-balanced trees, delta 3 and gamma 2), which also gives rank and select.
+final class PersistentBookTree {
+    private static final int DELTA = 3;
+    private static final int GAMMA = 2;
+    // Height bound for a cursor's stack: a weight-balanced tree of 2^31 keys is far shallower
+    private static final int MAX_DEPTH = 128;
+
+    static final class Node {
+        final int key;
+        final Book book;
+        final int size;
+        final Node left;
+        final Node right;
+
+        Node(int key, Book book, Node left, Node right) {
+            this.key = key;
+            this.book = book;
+            this.left = left;
+            this.right = right;
+            this.size = sizeOf(left) + sizeOf(right) + 1;
+        }
+    }
+
+    private PersistentBookTree() {
+    }
+
+    static int sizeOf(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    // A new version with book under key, replacing any book already there
+    static Node insert(Node node, int key, Book book) {
+        if (node == null) {
+            return new Node(key, book, null, null);
+        }
+        if (key < node.key) {
+            return balance(node.key, node.book, insert(node.left, key, book), node.right);
+        }
+        if (key > node.key) {
+            return balance(node.key, node.book, node.left, insert(node.right, key, book));
+        }
+        return new Node(key, book, node.left, node.right);
+    }
+
+    // A new version without key; node itself if key is absent
+    static Node delete(Node node, int key) {
+        if (node == null) {
+            return null;
+        }
+        if (key < node.key) {
+            Node left = delete(node.left, key);
+            return left == node.left ? node : balance(node.key, node.book, left, node.right);
+        }
+        if (key > node.key) {
+            Node right = delete(node.right, key);
+            return right == node.right ? node : balance(node.key, node.book, node.left, right);
+        }
+        return glue(node.left, node.right);
+    }
+
+    // Joins two balanced subtrees whose keys are all ordered left before right, around the minimum of
+    // the larger side
+    private static Node glue(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.size > right.size) {
+            Node max = left;
+            while (max.right != null) {
+                max = max.right;
+            }
+            return balance(max.key, max.book, delete(left, max.key), right);
+        }
+        Node min = right;
+        while (min.left != null) {
+            min = min.left;
+        }
+        return balance(min.key, min.book, left, delete(right, min.key));
+    }
+
+    private static Node balance(int key, Book book, Node left, Node right) {
+        int leftWeight = sizeOf(left) + 1;
+        int rightWeight = sizeOf(right) + 1;
+        if (rightWeight > DELTA * leftWeight) {
+            if (sizeOf(right.left) + 1 < GAMMA * (sizeOf(right.right) + 1)) {
+                return new Node(right.key, right.book, new Node(key, book, left, right.left), right.right);
+            }
+            Node middle = right.left;
+            return new Node(middle.key, middle.book, new Node(key, book, left, middle.left),
+                    new Node(right.key, right.book, middle.right, right.right));
+        }
+        if (leftWeight > DELTA * rightWeight) {
+            if (sizeOf(left.right) + 1 < GAMMA * (sizeOf(left.left) + 1)) {
+                return new Node(left.key, left.book, left.left, new Node(key, book, left.right, right));
+            }
+            Node middle = left.right;
+            return new Node(middle.key, middle.book, new Node(left.key, left.book, left.left, middle.left),
+                    new Node(key, book, middle.right, right));
+        }
+        return new Node(key, book, left, right);
+    }
+
+    // A perfectly balanced tree of books[0, count), which must be in ascending ID order, in O(n)
+    static Node build(Book[] books, int count) {
+        return build(books, 0, count - 1);
+    }
+
+    private static Node build(Book[] books, int low, int high) {
+        if (low > high) {
+            return null;
+        }
+        int middle = (low + high) >>> 1;
+        return new Node(books[middle].bookID, books[middle], build(books, low, middle - 1), build(books, middle + 1, high));
+    }
+
+    // Number of keys below key
+    static int rank(Node node, int key) {
+        int rank = 0;
+        while (node != null) {
+            if (key <= node.key) {
+                node = node.left;
+            } else {
+                rank += sizeOf(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return rank;
+    }
+
+    // Number of keys in [lowID, highID]
+    static int countInRange(Node root, int lowID, int highID) {
+        if (lowID > highID) {
+            return 0;
+        }
+        int atMostHigh = highID == Integer.MAX_VALUE ? sizeOf(root) : rank(root, highID + 1);
+        return atMostHigh - rank(root, lowID);
+    }
+
+    // Walks the books of one version in ascending ID order from a given position, O(log n) to start
+    // and amortised O(1) per step
+    static final class Cursor {
+        private final Node[] stack = new Node[MAX_DEPTH];
+        private int depth;
+
+        // Positions the cursor at the index-th smallest key of root, counting from 0
+        Cursor(Node root, long index) {
+            Node node = index >= sizeOf(root) ? null : root;
+            while (node != null) {
+                int leftSize = sizeOf(node.left);
+                if (index < leftSize) {
+                    stack[depth++] = node;
+                    node = node.left;
+                } else if (index == leftSize) {
+                    stack[depth++] = node;
+                    break;
+                } else {
+                    index -= leftSize + 1;
+                    node = node.right;
+                }
+            }
+        }
+
+        boolean hasNext() {
+            return depth > 0;
+        }
+
+        Node next() {
+            if (depth == 0) {
+                throw new NoSuchElementException();
+            }
+            Node node = stack[--depth];
+            for (Node child = node.right; child != null; child = child.left) {
+                stack[depth++] = child;
+            }
+            return node;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+// Bounded cache of PrintBook records, the bytes a book's current state prints as. The record itself
+// hangs off the Book, in Book.rendered, so a hit is one field read under the book's lock; this class
+// only decides which books may keep one. At most capacity books do, picked by CLOCK: a ring of the
+// books holding a record, each with a referenced bit that hits set and the sweeping hand clears, and
+// the first unreferenced book the hand reaches gives up its record to a newcomer.
+//
+// Any change to a book clears its record (GatorLib.beforeChange), so a record is always the book's
+// current state. Eviction clears a record without taking the book's lock: a reader that still sees
+// it prints a correct record, and the next one renders it again.
+final class RenderCache implements RenderCacheMBean {
+    private final Book[] ring;
+    private int hand;
+    private int size;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    RenderCache(int capacity) {
+        ring = new Book[capacity];
+    }
+
+    // The book's cached record, or null after counting a miss
+    byte[] get(Book book) {
+        byte[] rendered = book.rendered;
+        if (rendered == null) {
+            misses.increment();
+            return null;
+        }
+        book.renderReferenced = true;
+        hits.increment();
+        return rendered;
+    }
+
+    // Caches a record just rendered from book's current state; the caller holds the book's lock
+    synchronized void put(Book book, byte[] rendered) {
+        if (ring.length == 0) {
+            return;
+        }
+        if (book.renderSlot < 0) {
+            while (ring[hand] != null && ring[hand].renderReferenced) {
+                ring[hand].renderReferenced = false;
+                hand = hand + 1 == ring.length ? 0 : hand + 1;
+            }
+            Book victim = ring[hand];
+            if (victim != null) {
+                victim.rendered = null;
+                victim.renderSlot = -1;
+            } else {
+                size++;
+            }
+            ring[hand] = book;
+            book.renderSlot = hand;
+            hand = hand + 1 == ring.length ? 0 : hand + 1;
+        }
+        book.renderReferenced = false;
+        book.rendered = rendered;
+    }
+
+    // Drops a deleted book's record and its place in the ring
+    synchronized void remove(Book book) {
+        book.rendered = null;
+        if (book.renderSlot >= 0) {
+            ring[book.renderSlot] = null;
+            book.renderSlot = -1;
+            size--;
+        }
+    }
+
+    // Forgets every book, for a catalog replaced wholesale
+    synchronized void clear() {
+        for (int i = 0; i < ring.length; i++) {
+            if (ring[i] != null) {
+                ring[i].rendered = null;
+                ring[i].renderSlot = -1;
+                ring[i] = null;
+            }
+        }
+        hand = 0;
+        size = 0;
+    }
+
+    // Registers this cache's counters with the platform MBean server as gator:type=RenderCache
+    void registerMBean() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("gator:type=RenderCache");
+        if (!server.isRegistered(name)) {
+            server.registerMBean(new StandardMBean(this, RenderCacheMBean.class), name);
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public double getHitRate() {
+        long hits = getHits();
+        long lookups = hits + getMisses();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    public synchronized int getSize() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return ring.length;
+    }
+}
@@ -0,0 +1,13 @@
+// JMX view of a GatorLib's PrintBook record cache, registered as gator:type=RenderCache.
+// Hits and misses count every print of a book's current state since the library started.
+public interface RenderCacheMBean {
+    long getHits();
+
+    long getMisses();
+
+    double getHitRate();
+
+    int getSize();
+
+    int getCapacity();
+}
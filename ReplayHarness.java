@@ -0,0 +1,77 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+// Replays an operation file against a library and reports throughput, per-command latency
+// percentiles from the library's CommandMetrics, peak heap use and the render cache's hit rate. Each
+// command is timed around processOperation, so reading the file is not counted. Responses are rendered
+// as usual but discarded, so the output file's disk writes do not show up as latency spikes on
+// whichever command happens to flush.
+class ReplayHarness {
+    private static final String LATENCY_ROW = "%-16s %12d %10.2f %10.2f %10.2f %10.2f %12.2f%n";
+
+    private ReplayHarness() {
+    }
+
+    static void run(GatorLib library, String inputFilename) throws IOException {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+
+        OperationParser parser = new OperationParser();
+        long operations = 0;
+        long startTime = System.nanoTime();
+        try (BufferedReader in = new BufferedReader(new FileReader(inputFilename), 1 << 16);
+             ResponseWriter out = ResponseWriter.discard()) {
+            String line;
+            boolean open = true;
+            while (open && (line = in.readLine()) != null) {
+                open = library.processOperation(parser, line, out);
+                operations++;
+            }
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+
+        System.out.printf("Replayed %d operations from %s in %.2f s: %.0f ops/sec%n",
+                operations, inputFilename, seconds, operations / seconds);
+        System.out.printf("%-16s %12s %10s %10s %10s %10s %12s%n",
+                "Command (us)", "count", "mean", "p50", "p99", "p999", "max");
+        LatencyHistogram all = new LatencyHistogram();
+        for (OperationType type : OperationType.values()) {
+            LatencyHistogram latencies = library.metrics.histogram(type);
+            if (latencies.count() > 0) {
+                printLatencies(type.commandName, latencies);
+                all.add(latencies);
+            }
+        }
+        LatencyHistogram invalid = library.metrics.invalidHistogram();
+        if (invalid.count() > 0) {
+            printLatencies(CommandMetrics.INVALID, invalid);
+            all.add(invalid);
+        }
+        printLatencies("All", all);
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peakHeap += pool.getPeakUsage().getUsed();
+            }
+        }
+        // Pools peak at different moments, so their sum is an upper bound
+        System.out.printf("Peak heap used: %d MB (sum of per-pool peaks)%n", peakHeap >> 20);
+        RenderCache cache = library.renderCache;
+        if (cache != null) {
+            System.out.printf("PrintBook render cache: %d hits, %d misses (%.1f%% hit rate), %d of %d entries used%n",
+                    cache.getHits(), cache.getMisses(), 100 * cache.getHitRate(), cache.getSize(), cache.getCapacity());
+        }
+    }
+
+    private static void printLatencies(String name, LatencyHistogram latencies) {
+        System.out.printf(LATENCY_ROW, name, latencies.count(), latencies.mean() / 1e3,
+                latencies.percentile(0.5) / 1e3, latencies.percentile(0.99) / 1e3,
+                latencies.percentile(0.999) / 1e3, latencies.max() / 1e3);
+    }
+}
@@ -0,0 +1,169 @@
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+
+// Follower side of a ChangeStream. A replica thread loads the stream's catalog image into its own
+// GatorLib, then applies each change record as it arrives, while the library serves read-only
+// commands (see GatorLib.startFollowing). A stream file is tailed: at its end the thread polls for
+// more until the leader writes END. A socket stream ends when the leader closes it. Either way the
+// library stays up, serving the state as of the last change applied.
+//
+// Lag is the time from the leader logging a change to this replica applying it, from the wall-clock
+// stamp on each record, so it is only meaningful with leader and follower on the same machine.
+final class Replica {
+    private static final long POLL_NANOS = 200_000;
+
+    private final GatorLib library;
+    private final String source;
+    private final ReadableByteChannel channel;
+    private final boolean tail; // Wait for more at end of input, for a file the leader is appending to
+    private ByteBuffer buffer = ByteBuffer.allocate(ChangeStream.BUFFER_SIZE);
+    private final LatencyHistogram lags = new LatencyHistogram(); // Guarded by itself
+    private volatile long appliedSequence;
+    private volatile long lastLagNanos;
+    private volatile String state = "loading image";
+
+    private Replica(GatorLib library, String source, ReadableByteChannel channel, boolean tail) {
+        this.library = library;
+        this.source = source;
+        this.channel = channel;
+        this.tail = tail;
+        buffer.flip();
+    }
+
+    static Replica ofFile(GatorLib library, Path file) throws IOException {
+        return new Replica(library, file.toString(), FileChannel.open(file, StandardOpenOption.READ), true);
+    }
+
+    static Replica ofSocket(GatorLib library, SocketAddress address) throws IOException {
+        return new Replica(library, address.toString(), LibraryServer.connect(address), false);
+    }
+
+    // Starts applying the stream on a thread of its own
+    void start() {
+        Thread thread = new Thread(this::run, "gator-replica");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        try {
+            loadImage();
+            state = "following";
+            byte[] payload = new byte[256];
+            while (true) {
+                fill(ChangeStream.RECORD_OVERHEAD);
+                int length = buffer.getInt();
+                long sequence = buffer.getLong();
+                long leaderNanos = buffer.getLong();
+                byte type = buffer.get();
+                if (type == ChangeStream.END) {
+                    state = "leader closed the stream";
+                    break;
+                }
+                if (payload.length < length) {
+                    payload = new byte[Math.max(length, payload.length * 2)];
+                }
+                fill(length);
+                buffer.get(payload, 0, length);
+                library.applyChange(type, new DataInputStream(new ByteArrayInputStream(payload, 0, length)));
+                long lag = ChangeStream.wallClockNanos() - leaderNanos;
+                synchronized (lags) {
+                    lags.record(Math.max(0, lag));
+                }
+                lastLagNanos = lag;
+                appliedSequence = sequence;
+            }
+        } catch (EOFException e) {
+            state = "stream ended";
+        } catch (IOException | RuntimeException e) {
+            state = "failed: " + e;
+            System.err.println("Replica of " + source + " stopped: " + e);
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing left to read from it
+            }
+        }
+    }
+
+    private void loadImage() throws IOException {
+        fill(ChangeStream.HEADER_SIZE);
+        int magic = buffer.getInt();
+        int version = buffer.getInt();
+        int length = buffer.getInt();
+        if (magic != ChangeStream.MAGIC) {
+            throw new IOException(source + " is not a change stream");
+        }
+        if (version != ChangeStream.VERSION) {
+            throw new IOException(source + " has change stream version " + version + ", expected " + ChangeStream.VERSION);
+        }
+        Path image = Files.createTempFile("gator-replica", ".img");
+        try (FileChannel out = FileChannel.open(image, StandardOpenOption.WRITE)) {
+            for (int remaining = length; remaining > 0; ) {
+                fill(1);
+                ByteBuffer piece = buffer.slice();
+                piece.limit(Math.min(piece.remaining(), remaining));
+                int written = out.write(piece);
+                buffer.position(buffer.position() + written);
+                remaining -= written;
+            }
+        }
+        try {
+            appliedSequence = library.loadFollowerImage(image);
+        } finally {
+            Files.deleteIfExists(image);
+        }
+    }
+
+    // Reads until at least count bytes are buffered
+    private void fill(int count) throws IOException {
+        if (buffer.remaining() >= count) {
+            return;
+        }
+        if (buffer.capacity() < count) {
+            buffer = ByteBuffer.allocate(Math.max(count, buffer.capacity() * 2)).put(buffer).flip();
+        }
+        buffer.compact();
+        try {
+            while (buffer.position() < count) {
+                int read = channel.read(buffer);
+                if (read < 0 && !tail) {
+                    throw new EOFException();
+                }
+                if (read <= 0) { // At the end of a tailed file, for now
+                    LockSupport.parkNanos(POLL_NANOS);
+                }
+            }
+        } finally {
+            buffer.flip();
+        }
+    }
+
+    // One line on how far this replica has got and how far behind the leader it has been
+    String status() {
+        long count;
+        double p50;
+        double p99;
+        double max;
+        synchronized (lags) {
+            count = lags.count();
+            p50 = lags.percentile(0.5) / 1e6;
+            p99 = lags.percentile(0.99) / 1e6;
+            max = lags.max() / 1e6;
+        }
+        return String.format(Locale.ROOT, "follower of %s, %s, at sequence %d; lag ms over %d changes: last %.3f, p50 %.3f, p99 %.3f, max %.3f",
+                source, state, appliedSequence, count, lastLagNanos / 1e6, p50, p99, max);
+    }
+}
@@ -0,0 +1,80 @@
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Running totals over a GatorLib's reservation heaps for TreeStats, kept as the heaps grow and shrink
+// so taking them walks no books. A heap's depth follows from its size, so books are counted per depth
+// and the deepest heap is the highest depth with a book at it. Each depth also remembers a book at
+// it: the last one to arrive, or to change while the depth had none, so a deepest book can usually be
+// named. Heaps change under many book locks at once, so every total is atomic, and a reader may see
+// totals a few changes apart.
+final class ReservationTotals {
+    private static final int DEPTHS = 33; // A heap of Integer.MAX_VALUE reservations is 31 deep
+    static final long NO_BOOK = Long.MIN_VALUE; // bookAt when no book is known; no book ID can equal it
+
+    private final LongAdder reservations = new LongAdder();
+    private final AtomicIntegerArray booksAtDepth = new AtomicIntegerArray(DEPTHS);
+    private final AtomicLongArray bookAtDepth = new AtomicLongArray(DEPTHS); // NO_BOOK when not known
+
+    ReservationTotals() {
+        reset();
+    }
+
+    // Records that bookID's heap went from oldSize reservations to newSize. The caller holds the
+    // book's lock, so one book's changes arrive in order.
+    void resized(int bookID, int oldSize, int newSize) {
+        if (oldSize == newSize) {
+            return;
+        }
+        reservations.add(newSize - oldSize);
+        int oldDepth = MinHeap.depthOf(oldSize);
+        int newDepth = MinHeap.depthOf(newSize);
+        if (oldDepth != newDepth) {
+            if (oldDepth > 0) {
+                booksAtDepth.decrementAndGet(oldDepth);
+                bookAtDepth.compareAndSet(oldDepth, bookID, NO_BOOK);
+            }
+            if (newDepth > 0) {
+                booksAtDepth.incrementAndGet(newDepth);
+                bookAtDepth.set(newDepth, bookID);
+            }
+        } else if (newDepth > 0) {
+            bookAtDepth.compareAndSet(newDepth, NO_BOOK, bookID);
+        }
+    }
+
+    // Forgets every heap, before the catalog is replaced
+    void reset() {
+        reservations.reset();
+        for (int depth = 0; depth < DEPTHS; depth++) {
+            booksAtDepth.set(depth, 0);
+            bookAtDepth.set(depth, NO_BOOK);
+        }
+    }
+
+    long reservations() {
+        return reservations.sum();
+    }
+
+    int booksWithReservations() {
+        int books = 0;
+        for (int depth = 1; depth < DEPTHS; depth++) {
+            books += booksAtDepth.get(depth);
+        }
+        return books;
+    }
+
+    int maxDepth() {
+        for (int depth = DEPTHS - 1; depth > 0; depth--) {
+            if (booksAtDepth.get(depth) > 0) {
+                return depth;
+            }
+        }
+        return 0;
+    }
+
+    // A book whose heap is depth deep, or NO_BOOK if none is known
+    long bookAt(int depth) {
+        return depth == 0 ? NO_BOOK : bookAtDepth.get(depth);
+    }
+}
@@ -0,0 +1,131 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+// Shape of a GatorLib's catalog and the rebalancing work that kept it that way, for the TreeStats
+// command and gator:type=Tree. The counters and the height are kept by RedBlackTree as it rotates and
+// recolours, and the reservation figures by ReservationTotals as heaps change, so taking one walks
+// no books: black height follows the left spine, and everything else is read as it stands.
+final class TreeStats {
+    final int books;
+    final int height;
+    final int blackHeight;
+    final long leftRotations;
+    final long rightRotations;
+    final long recolorings;
+    final long insertFixups;
+    final long insertFixIterations;
+    final long deleteFixups;
+    final long deleteFixIterations;
+    final int booksWithReservations;
+    final long reservations;
+    final int maxHeapDepth;
+    final long deepestHeapBook; // A book whose heap is maxHeapDepth deep, or ReservationTotals.NO_BOOK
+
+    // The caller holds the catalog read lock, so the tree is not changing. Heaps may be, under their
+    // books' locks, which this does not take: the reservation figures are each some recent one.
+    TreeStats(RedBlackTree tree, ReservationTotals heaps) {
+        books = tree.size();
+        height = tree.height();
+        blackHeight = tree.blackHeight();
+        leftRotations = tree.leftRotations();
+        rightRotations = tree.rightRotations();
+        recolorings = tree.recolorings();
+        insertFixups = tree.insertFixups();
+        insertFixIterations = tree.insertFixIterations();
+        deleteFixups = tree.deleteFixups();
+        deleteFixIterations = tree.deleteFixIterations();
+        booksWithReservations = heaps.booksWithReservations();
+        reservations = heaps.reservations();
+        maxHeapDepth = heaps.maxDepth();
+        deepestHeapBook = heaps.bookAt(maxHeapDepth);
+    }
+
+    void write(String heading, ResponseWriter out) throws IOException {
+        out.write("\n" + heading + "\n"
+                + "Books = " + books + "\n"
+                + "Height = " + height + "\n"
+                + "Black Height = " + blackHeight + "\n"
+                + "Rotations = " + leftRotations + " left, " + rightRotations + " right\n"
+                + "Recolourings = " + recolorings + "\n"
+                + "Insert Fix-ups = " + insertFixups + " (" + insertFixIterations + " iterations)\n"
+                + "Delete Fix-ups = " + deleteFixups + " (" + deleteFixIterations + " iterations)\n"
+                + "Books With Reservations = " + booksWithReservations + "\n"
+                + "Reservations = " + reservations + "\n"
+                + "Max Reservation Heap Depth = " + maxHeapDepth
+                + (deepestHeapBook == ReservationTotals.NO_BOOK ? "" : " (Book " + deepestHeapBook + ")") + "\n");
+    }
+
+    // Registers library's tree statistics with the platform MBean server as gator:type=Tree
+    static void registerMBean(GatorLib library) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("gator:type=Tree");
+        if (!server.isRegistered(name)) {
+            server.registerMBean(new StandardMBean(new View(library), TreeStatsMBean.class), name);
+        }
+    }
+
+    // Each attribute takes a TreeStats of its own, which is cheap: nothing in it walks the catalog
+    private static final class View implements TreeStatsMBean {
+        private final GatorLib library;
+
+        View(GatorLib library) {
+            this.library = library;
+        }
+
+        public int getBooks() {
+            return library.treeStats().books;
+        }
+
+        public int getHeight() {
+            return library.treeStats().height;
+        }
+
+        public int getBlackHeight() {
+            return library.treeStats().blackHeight;
+        }
+
+        public long getLeftRotations() {
+            return library.treeStats().leftRotations;
+        }
+
+        public long getRightRotations() {
+            return library.treeStats().rightRotations;
+        }
+
+        public long getRecolorings() {
+            return library.treeStats().recolorings;
+        }
+
+        public long getInsertFixups() {
+            return library.treeStats().insertFixups;
+        }
+
+        public long getInsertFixIterations() {
+            return library.treeStats().insertFixIterations;
+        }
+
+        public long getDeleteFixups() {
+            return library.treeStats().deleteFixups;
+        }
+
+        public long getDeleteFixIterations() {
+            return library.treeStats().deleteFixIterations;
+        }
+
+        public int getBooksWithReservations() {
+            return library.treeStats().booksWithReservations;
+        }
+
+        public long getReservations() {
+            return library.treeStats().reservations;
+        }
+
+        public int getMaxReservationHeapDepth() {
+            return library.treeStats().maxHeapDepth;
+        }
+    }
+}
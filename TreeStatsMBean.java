@@ -0,0 +1,30 @@
+// JMX view of a GatorLib's catalog structures, registered as gator:type=Tree. Rotation, recolouring
+// and fix-up counts are since the library started; the rest are current. All are kept as the catalog
+// changes, so reading one walks no books.
+public interface TreeStatsMBean {
+    int getBooks();
+
+    int getHeight();
+
+    int getBlackHeight();
+
+    long getLeftRotations();
+
+    long getRightRotations();
+
+    long getRecolorings();
+
+    long getInsertFixups();
+
+    long getInsertFixIterations();
+
+    long getDeleteFixups();
+
+    long getDeleteFixIterations();
+
+    int getBooksWithReservations();
+
+    long getReservations();
+
+    int getMaxReservationHeapDepth();
+}
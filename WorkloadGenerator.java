@@ -0,0 +1,224 @@
+import java.io.IOException;
+import java.util.Random;
+
+// Writes synthetic operation files in the input format, for sizing and regression runs at scales
+// no one writes by hand. A file starts by inserting the whole catalog in shuffled order, followed by
+// the requested number of mixed commands and a final Quit().
+//
+// Book popularity is Zipfian: BorrowBook and PrintBook pick a book by popularity rank, with rank 0
+// the most requested. Ranks map to a random book, so hot books are spread across the ID space. The
+// catalog uses odd IDs, and later InsertBooks fill in even ones, so FindClosestBook meets gaps and
+// ties. The generator tracks which books are live and which are on loan, so returns mostly name the
+// patron actually holding the book. It does not follow reservation hand-offs on return, so some
+// later returns name the wrong patron, which the library rejects as it would from a real client.
+class WorkloadGenerator {
+    static final String[] MIX_COMMANDS = {"InsertBook", "BorrowBook", "ReturnBook", "PrintBook", "PrintBooks",
+            "FindClosestBook", "DeleteBook", "ColorFlipCount"};
+
+    int catalogSize = 100_000;
+    int patronCount = 10_000;
+    double zipfExponent = 0.99;
+    int rangeWidth = 100;
+    long seed = 42;
+    // Relative weights, in MIX_COMMANDS order
+    int[] mix = {5, 40, 30, 10, 5, 5, 4, 1};
+
+    private Random random;
+    private int idSpace;
+    private boolean[] live;
+    private int[] holder;
+    private int[] loans;     // Books currently on loan
+    private int[] loanIndex; // Position of each book in loans, valid while it is on loan
+    private int loanCount;
+
+    // Parses weights such as "5:40:30:10:5:5:4:1"
+    void setMix(String weights) {
+        String[] parts = weights.split(":");
+        if (parts.length != MIX_COMMANDS.length) {
+            throw new IllegalArgumentException("--mix needs " + MIX_COMMANDS.length + " weights, for "
+                    + String.join(":", MIX_COMMANDS));
+        }
+        int[] parsed = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            parsed[i] = Integer.parseInt(parts[i].trim());
+            if (parsed[i] < 0) {
+                throw new IllegalArgumentException("--mix weights cannot be negative: " + weights);
+            }
+        }
+        mix = parsed;
+    }
+
+    // Returns the number of lines written
+    long write(String filename, long operations) throws IOException {
+        if (zipfExponent < 0 || zipfExponent >= 1) {
+            throw new IllegalArgumentException("--zipf must be in [0, 1), got " + zipfExponent);
+        }
+        random = new Random(seed);
+        idSpace = 2 * catalogSize + 1;
+        live = new boolean[idSpace + 1];
+        holder = new int[idSpace + 1];
+        loans = new int[idSpace + 1];
+        loanIndex = new int[idSpace + 1];
+        loanCount = 0;
+
+        int[] byPopularity = new int[catalogSize];
+        for (int i = 0; i < catalogSize; i++) {
+            byPopularity[i] = 2 * i + 1;
+        }
+        for (int i = catalogSize - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = byPopularity[i];
+            byPopularity[i] = byPopularity[j];
+            byPopularity[j] = swap;
+        }
+        Zipf popularity = new Zipf(catalogSize, zipfExponent);
+        int totalWeight = 0;
+        for (int weight : mix) {
+            totalWeight += weight;
+        }
+        if (totalWeight == 0) {
+            throw new IllegalArgumentException("--mix weights are all zero");
+        }
+
+        try (ResponseWriter out = ResponseWriter.toFile(filename)) {
+            for (int bookID : byPopularity) {
+                insertBook(bookID, out);
+            }
+            for (long n = 0; n < operations; n++) {
+                int pick = random.nextInt(totalWeight);
+                int command = 0;
+                while (pick >= mix[command]) {
+                    pick -= mix[command++];
+                }
+                switch (command) {
+                    case 0:
+                        insertBook(1 + random.nextInt(idSpace), out);
+                        break;
+                    case 1:
+                        borrowBook(byPopularity[popularity.next(random)], out);
+                        break;
+                    case 2:
+                        if (loanCount == 0) {
+                            borrowBook(byPopularity[popularity.next(random)], out);
+                        } else {
+                            returnBook(loans[random.nextInt(loanCount)], out);
+                        }
+                        break;
+                    case 3:
+                        line(out, "PrintBook(", byPopularity[popularity.next(random)]);
+                        out.write(")\n");
+                        break;
+                    case 4:
+                        int low = 1 + random.nextInt(idSpace);
+                        line(out, "PrintBooks(", low);
+                        out.write(", ");
+                        out.write(low + random.nextInt(rangeWidth + 1));
+                        out.write(")\n");
+                        break;
+                    case 5:
+                        line(out, "FindClosestBook(", random.nextInt(idSpace + 2));
+                        out.write(")\n");
+                        break;
+                    case 6:
+                        deleteBook(1 + random.nextInt(idSpace), out);
+                        break;
+                    default:
+                        out.write("ColorFlipCount()\n");
+                }
+            }
+            out.write("Quit()\n");
+        }
+        return catalogSize + operations + 1;
+    }
+
+    private static void line(ResponseWriter out, String command, int firstArgument) throws IOException {
+        out.write(command);
+        out.write(firstArgument);
+    }
+
+    private void insertBook(int bookID, ResponseWriter out) throws IOException {
+        line(out, "InsertBook(", bookID);
+        out.write(", \"Book ");
+        out.write(bookID);
+        out.write("\", \"Author ");
+        out.write(bookID % 9973);
+        out.write("\", \"Yes\")\n");
+        live[bookID] = true;
+    }
+
+    private void borrowBook(int bookID, ResponseWriter out) throws IOException {
+        int patronID = 1 + random.nextInt(patronCount);
+        line(out, "BorrowBook(", patronID);
+        out.write(", ");
+        out.write(bookID);
+        out.write(", ");
+        out.write(1 + random.nextInt(5));
+        out.write(")\n");
+        if (live[bookID] && holder[bookID] == 0) {
+            holder[bookID] = patronID;
+            loanIndex[bookID] = loanCount;
+            loans[loanCount++] = bookID;
+        }
+    }
+
+    private void returnBook(int bookID, ResponseWriter out) throws IOException {
+        line(out, "ReturnBook(", holder[bookID]);
+        out.write(", ");
+        out.write(bookID);
+        out.write(")\n");
+        endLoan(bookID);
+    }
+
+    private void deleteBook(int bookID, ResponseWriter out) throws IOException {
+        line(out, "DeleteBook(", bookID);
+        out.write(")\n");
+        live[bookID] = false;
+        if (holder[bookID] != 0) {
+            endLoan(bookID);
+        }
+    }
+
+    private void endLoan(int bookID) {
+        int last = loans[--loanCount];
+        loans[loanIndex[bookID]] = last;
+        loanIndex[last] = loanIndex[bookID];
+        holder[bookID] = 0;
+    }
+
+    // Zipfian ranks in [0, n) by the method of Gray et al., "Quickly Generating Billion-Record
+    // Synthetic Databases": one O(n) pass up front, then O(1) per sample. An exponent of 0 is uniform.
+    static final class Zipf {
+        private final int n;
+        private final double theta;
+        private final double zetaN;
+        private final double alpha;
+        private final double eta;
+        private final double secondThreshold;
+
+        Zipf(int n, double theta) {
+            this.n = n;
+            this.theta = theta;
+            double zeta = 0;
+            for (int i = 1; i <= n; i++) {
+                zeta += 1 / Math.pow(i, theta);
+            }
+            zetaN = zeta;
+            double zeta2 = 1 + 1 / Math.pow(2, theta);
+            alpha = 1 / (1 - theta);
+            eta = (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - zeta2 / zetaN);
+            secondThreshold = 1 + Math.pow(0.5, theta);
+        }
+
+        int next(Random random) {
+            double u = random.nextDouble();
+            double uz = u * zetaN;
+            if (uz < 1) {
+                return 0;
+            }
+            if (uz < secondThreshold && n > 1) {
+                return 1;
+            }
+            return (int) Math.min(n - 1, (long) (n * Math.pow(eta * u - eta + 1, alpha)));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package gator;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Reservation heap operations on a heap holding 2^depth - 1 entries. Each op inserts one reservation
+// and extracts the minimum, so the heap keeps its depth for the whole run.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-XX:+AlwaysPreTouch"})
+@State(Scope.Thread)
+public class MinHeapBenchmark {
+    private static final int PRIORITY_COUNT = 1 << 12;
+
+    // A book's reservation list is usually short, the deeper heaps show how sifting scales
+    @Param({"1", "3", "7", "14"})
+    public int depth;
+
+    private MinHeap heap;
+    private int[] priorities;
+    private int next;
+    private long clock;
+
+    @Setup(Level.Iteration)
+    public void fill() {
+        Random random = new Random(42);
+        priorities = new int[PRIORITY_COUNT];
+        for (int i = 0; i < PRIORITY_COUNT; i++) {
+            priorities[i] = 1 + random.nextInt(20);
+        }
+        heap = new MinHeap();
+        for (int i = 0; i < (1 << depth) - 1; i++) {
+            heap.insert(i, priorities[i & (PRIORITY_COUNT - 1)], clock++);
+        }
+    }
+
+    @Benchmark
+    public Reservation insertExtractMin() {
+        heap.insert(next, priorities[next++ & (PRIORITY_COUNT - 1)], clock++);
+        return heap.extractMin();
+    }
+
+    @Benchmark
+    public String toStringReservations() {
+        return heap.toString();
+    }
+}
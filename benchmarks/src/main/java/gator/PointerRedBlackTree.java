@@ -0,0 +1,282 @@
+package gator;
+
+// The red-black tree as it was before RedBlackTree moved its nodes into a NodeStore: one object per
+// key, linked by references. Kept only as a baseline for RedBlackTreeBenchmark, so it has just the
+// operations the benchmark runs; the rebalancing is the library's, line for line, so both trees do
+// the same rotations and count the same colour flips.
+final class PointerRedBlackTree {
+    private static final class Node {
+        int key;
+        Node parent;
+        Node left;
+        Node right;
+        boolean red;
+        int size; // Nodes in the subtree rooted here, kept as the library's tree keeps it
+
+        Node(int key, boolean red) {
+            this.key = key;
+            this.red = red;
+            this.size = 1;
+        }
+    }
+
+    private Node root;
+    private int colorFlipCount;
+
+    void insert(int key) {
+        Node newNode = new Node(key, true);
+        if (root == null) {
+            root = newNode;
+            root.red = false;
+            return;
+        }
+        Node parent = null;
+        Node current = root;
+        while (current != null) {
+            parent = current;
+            if (key < current.key) {
+                current = current.left;
+            } else if (key > current.key) {
+                current = current.right;
+            } else {
+                return;
+            }
+        }
+        newNode.parent = parent;
+        if (key < parent.key) {
+            parent.left = newNode;
+        } else {
+            parent.right = newNode;
+        }
+        for (Node ancestor = parent; ancestor != null; ancestor = ancestor.parent) {
+            ancestor.size++;
+        }
+        fixInsert(newNode);
+    }
+
+    private void fixInsert(Node node) {
+        while (node != root && node.parent.red) {
+            Node parent = node.parent;
+            Node grandParent = parent.parent;
+            if (parent == grandParent.left) {
+                Node uncle = grandParent.right;
+                if (isRed(uncle)) {
+                    parent.red = false;
+                    uncle.red = false;
+                    grandParent.red = true;
+                    node = grandParent;
+                } else {
+                    if (node == parent.right) {
+                        node = parent;
+                        rotateLeft(node);
+                        parent = node.parent;
+                    }
+                    parent.red = false;
+                    grandParent.red = true;
+                    rotateRight(grandParent);
+                }
+            } else {
+                Node uncle = grandParent.left;
+                if (isRed(uncle)) {
+                    parent.red = false;
+                    uncle.red = false;
+                    grandParent.red = true;
+                    node = grandParent;
+                } else {
+                    if (node == parent.left) {
+                        node = parent;
+                        rotateRight(node);
+                        parent = node.parent;
+                    }
+                    parent.red = false;
+                    grandParent.red = true;
+                    rotateLeft(grandParent);
+                }
+            }
+        }
+        root.red = false;
+    }
+
+    private void rotateLeft(Node node) {
+        Node rightChild = node.right;
+        node.right = rightChild.left;
+        if (rightChild.left != null) {
+            rightChild.left.parent = node;
+        }
+        rightChild.parent = node.parent;
+        if (node.parent == null) {
+            root = rightChild;
+        } else if (node == node.parent.left) {
+            node.parent.left = rightChild;
+        } else {
+            node.parent.right = rightChild;
+        }
+        rightChild.left = node;
+        node.parent = rightChild;
+        rightChild.size = node.size;
+        node.size = sizeOf(node.left) + sizeOf(node.right) + 1;
+        if (node.red != rightChild.red) {
+            colorFlipCount++;
+        }
+    }
+
+    private void rotateRight(Node node) {
+        Node leftChild = node.left;
+        node.left = leftChild.right;
+        if (leftChild.right != null) {
+            leftChild.right.parent = node;
+        }
+        leftChild.parent = node.parent;
+        if (node.parent == null) {
+            root = leftChild;
+        } else if (node == node.parent.right) {
+            node.parent.right = leftChild;
+        } else {
+            node.parent.left = leftChild;
+        }
+        leftChild.right = node;
+        node.parent = leftChild;
+        leftChild.size = node.size;
+        node.size = sizeOf(node.left) + sizeOf(node.right) + 1;
+        if (node.red != leftChild.red) {
+            colorFlipCount++;
+        }
+    }
+
+    void delete(int key) {
+        Node node = search(key);
+        if (node == null) {
+            return;
+        }
+        Node deletedNode = node.left == null || node.right == null ? node : successor(node);
+        Node child = deletedNode.left != null ? deletedNode.left : deletedNode.right;
+        // The child may be null, so its parent is tracked separately for the fix-up
+        Node childParent = deletedNode.parent;
+        if (child != null) {
+            child.parent = childParent;
+        }
+        if (childParent == null) {
+            root = child;
+        } else if (deletedNode == childParent.left) {
+            childParent.left = child;
+        } else {
+            childParent.right = child;
+        }
+        if (deletedNode != node) {
+            node.key = deletedNode.key;
+        }
+        for (Node ancestor = childParent; ancestor != null; ancestor = ancestor.parent) {
+            ancestor.size--;
+        }
+        if (!deletedNode.red) {
+            fixDelete(child, childParent);
+        }
+    }
+
+    // node carries the extra black and may be null
+    private void fixDelete(Node node, Node parent) {
+        while (node != root && !isRed(node)) {
+            if (node == parent.left) {
+                Node sibling = parent.right;
+                if (sibling.red) {
+                    sibling.red = false;
+                    parent.red = true;
+                    rotateLeft(parent);
+                    sibling = parent.right;
+                }
+                if (!isRed(sibling.left) && !isRed(sibling.right)) {
+                    sibling.red = true;
+                    node = parent;
+                    parent = node.parent;
+                } else {
+                    if (!isRed(sibling.right)) {
+                        sibling.left.red = false;
+                        sibling.red = true;
+                        rotateRight(sibling);
+                        sibling = parent.right;
+                    }
+                    sibling.red = parent.red;
+                    parent.red = false;
+                    sibling.right.red = false;
+                    rotateLeft(parent);
+                    node = root;
+                }
+            } else {
+                Node sibling = parent.left;
+                if (sibling.red) {
+                    sibling.red = false;
+                    parent.red = true;
+                    rotateRight(parent);
+                    sibling = parent.left;
+                }
+                if (!isRed(sibling.left) && !isRed(sibling.right)) {
+                    sibling.red = true;
+                    node = parent;
+                    parent = node.parent;
+                } else {
+                    if (!isRed(sibling.left)) {
+                        sibling.right.red = false;
+                        sibling.red = true;
+                        rotateLeft(sibling);
+                        sibling = parent.left;
+                    }
+                    sibling.red = parent.red;
+                    parent.red = false;
+                    sibling.left.red = false;
+                    rotateRight(parent);
+                    node = root;
+                }
+            }
+        }
+        if (node != null) {
+            node.red = false;
+        }
+    }
+
+    private static boolean isRed(Node node) {
+        return node != null && node.red;
+    }
+
+    private static int sizeOf(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private Node search(int key) {
+        Node current = root;
+        while (current != null && current.key != key) {
+            current = key < current.key ? current.left : current.right;
+        }
+        return current;
+    }
+
+    private static Node successor(Node node) {
+        Node current = node.right;
+        while (current.left != null) {
+            current = current.left;
+        }
+        return current;
+    }
+
+    boolean contains(int key) {
+        return search(key) != null;
+    }
+
+    // Largest key <= targetID, or RedBlackTree.NO_KEY if every key is larger
+    long floorKey(int targetID) {
+        Node current = root;
+        long candidate = RedBlackTree.NO_KEY;
+        while (current != null) {
+            if (current.key <= targetID) {
+                candidate = current.key;
+                current = current.right;
+            } else {
+                current = current.left;
+            }
+        }
+        return candidate;
+    }
+
+    int getColorFlipCount() {
+        return colorFlipCount;
+    }
+}
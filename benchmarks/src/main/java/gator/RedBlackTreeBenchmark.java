@@ -0,0 +1,208 @@
+package gator;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Cost of inserting, then deleting, `size` keys in the given order, and of looking every key up
+// again in random order. One op is the whole pass, so per-key cost is the score divided by size.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g", "-XX:+AlwaysPreTouch"})
+@State(Scope.Benchmark)
+public class RedBlackTreeBenchmark {
+    public enum KeyOrder {
+        SEQUENTIAL,  // Ascending IDs, every insert lands on the rightmost path
+        RANDOM,      // Shuffled with a fixed seed
+        ADVERSARIAL  // Alternating lowest and highest remaining IDs, so inserts zigzag between both spines
+    }
+
+    // Delete passes rebuild the tree before every invocation, so sizes stay large enough for that
+    // setup to be cheap next to the measured pass
+    @Param({"10000", "1000000"})
+    public int size;
+
+    @Param
+    public KeyOrder order;
+
+    public enum Storage {
+        HEAP,     // NodeStore records in one int[]
+        OFF_HEAP, // The same records in a direct buffer
+        POINTER   // PointerRedBlackTree, one object per node as before NodeStore
+    }
+
+    @Param
+    public Storage storage;
+
+    private int[] keys;
+    private int[] lookups;
+
+    static int[] keys(KeyOrder order, int size) {
+        int[] keys = new int[size];
+        switch (order) {
+            case SEQUENTIAL:
+                for (int i = 0; i < size; i++) {
+                    keys[i] = i + 1;
+                }
+                break;
+            case RANDOM:
+                Random random = new Random(42);
+                for (int i = 0; i < size; i++) {
+                    keys[i] = i + 1;
+                }
+                for (int i = size - 1; i > 0; i--) {
+                    int j = random.nextInt(i + 1);
+                    int swap = keys[i];
+                    keys[i] = keys[j];
+                    keys[j] = swap;
+                }
+                break;
+            case ADVERSARIAL:
+                int low = 1;
+                int high = size;
+                for (int i = 0; i < size; i++) {
+                    keys[i] = (i & 1) == 0 ? low++ : high--;
+                }
+                break;
+        }
+        return keys;
+    }
+
+    @Setup(Level.Trial)
+    public void generateKeys() {
+        keys = keys(order, size);
+        lookups = keys(KeyOrder.RANDOM, size);
+    }
+
+    // The operations measured, so each storage runs the same benchmark code. A fork loads only one
+    // implementation, so the calls stay monomorphic.
+    interface Tree {
+        void insert(int key);
+
+        void delete(int key);
+
+        boolean contains(int key);
+
+        long floorKey(int key);
+
+        int getColorFlipCount();
+    }
+
+    Tree newTree() {
+        if (storage == Storage.POINTER) {
+            PointerRedBlackTree tree = new PointerRedBlackTree();
+            return new Tree() {
+                public void insert(int key) {
+                    tree.insert(key);
+                }
+
+                public void delete(int key) {
+                    tree.delete(key);
+                }
+
+                public boolean contains(int key) {
+                    return tree.contains(key);
+                }
+
+                public long floorKey(int key) {
+                    return tree.floorKey(key);
+                }
+
+                public int getColorFlipCount() {
+                    return tree.getColorFlipCount();
+                }
+            };
+        }
+        RedBlackTree tree = new RedBlackTree(storage == Storage.HEAP ? NodeStore.onHeap() : NodeStore.offHeap());
+        return new Tree() {
+            public void insert(int key) {
+                tree.insert(key);
+            }
+
+            public void delete(int key) {
+                tree.delete(key);
+            }
+
+            public boolean contains(int key) {
+                return tree.contains(key);
+            }
+
+            public long floorKey(int key) {
+                return tree.floorKey(key);
+            }
+
+            public int getColorFlipCount() {
+                return tree.getColorFlipCount();
+            }
+        };
+    }
+
+    @Benchmark
+    public int insertAll() {
+        Tree tree = newTree();
+        for (int key : keys) {
+            tree.insert(key);
+        }
+        return tree.getColorFlipCount();
+    }
+
+    @State(Scope.Thread)
+    public static class FullTree {
+        Tree tree;
+
+        @Setup(Level.Invocation)
+        public void build(RedBlackTreeBenchmark benchmark) {
+            tree = benchmark.newTree();
+            for (int key : benchmark.keys) {
+                tree.insert(key);
+            }
+        }
+    }
+
+    // Deletes in the same order the keys were inserted
+    @Benchmark
+    public int deleteAll(FullTree full) {
+        for (int key : keys) {
+            full.tree.delete(key);
+        }
+        return full.tree.getColorFlipCount();
+    }
+
+    @State(Scope.Benchmark)
+    public static class LookupTree {
+        Tree tree;
+
+        @Setup(Level.Trial)
+        public void build(RedBlackTreeBenchmark benchmark) {
+            tree = benchmark.newTree();
+            for (int key : benchmark.keys) {
+                tree.insert(key);
+            }
+        }
+    }
+
+    // Finds every key in random order, then runs a floor search for its negation, which misses after
+    // walking down the leftmost path
+    @Benchmark
+    public long lookupAll(LookupTree lookup) {
+        long sum = 0;
+        for (int key : lookups) {
+            sum += lookup.tree.contains(key) ? 1 : 0;
+            sum += lookup.tree.floorKey(-key);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,81 @@
+package gator;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// End-to-end command throughput: every invocation replays the same generated operation file into a
+// fresh GatorLib through the parser and response rendering, discarding the output. The score is
+// commands per second; run with -prof gc for the allocation rate per command.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-XX:+AlwaysPreTouch"})
+@State(Scope.Benchmark)
+public class ReplayBenchmark {
+    static final int OPERATIONS = 100_000;
+    private static final int BOOK_IDS = 20_000;
+
+    private String[] operations;
+
+    // Fixed-seed mix in roughly the proportions of the sample inputs: mostly borrow and return
+    // traffic on a catalog that keeps growing, with some reads, deletes and searches
+    static String[] generate(int count, long seed) {
+        Random random = new Random(seed);
+        String[] lines = new String[count];
+        for (int i = 0; i < count; i++) {
+            int bookID = 1 + random.nextInt(BOOK_IDS);
+            int patronID = 1 + random.nextInt(500);
+            int kind = random.nextInt(100);
+            if (kind < 25) {
+                lines[i] = "InsertBook(" + bookID + ", \"Book " + bookID + "\", \"Author " + (bookID % 97)
+                        + "\", \"Yes\")";
+            } else if (kind < 50) {
+                lines[i] = "BorrowBook(" + patronID + ", " + bookID + ", " + (1 + random.nextInt(5)) + ")";
+            } else if (kind < 70) {
+                lines[i] = "ReturnBook(" + patronID + ", " + bookID + ")";
+            } else if (kind < 80) {
+                lines[i] = "PrintBook(" + bookID + ")";
+            } else if (kind < 85) {
+                lines[i] = "PrintBooks(" + bookID + ", " + (bookID + 20) + ")";
+            } else if (kind < 92) {
+                lines[i] = "FindClosestBook(" + bookID + ")";
+            } else if (kind < 97) {
+                lines[i] = "DeleteBook(" + bookID + ")";
+            } else {
+                lines[i] = "ColorFlipCount()";
+            }
+        }
+        return lines;
+    }
+
+    @Setup(Level.Trial)
+    public void generateOperations() {
+        operations = generate(OPERATIONS, 42);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public GatorLib replay() throws IOException {
+        GatorLib library = new GatorLib();
+        OperationParser parser = new OperationParser();
+        ResponseWriter out = ResponseWriter.discard();
+        for (String operation : operations) {
+            library.processOperation(parser, operation, out);
+        }
+        return library;
+    }
+}
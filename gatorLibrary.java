@@ -1,735 +1,3060 @@
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
-
-class Reservation {
-    int patronID;// ID of the patron making the reservation
-    int priorityNumber; // Priority assigned to the reservation
-    long timeOfReservation; // Time at which the reservation was made
-    // Constructor to initialize reservation details
-    public Reservation(int patronID, int priorityNumber, long timeOfReservation) {
-        this.patronID = patronID;
-        this.priorityNumber = priorityNumber;
-        this.timeOfReservation = timeOfReservation;
-    }
-}
-
-class MinHeap {
-    private Reservation[] heap;
-    private int size;
-    private static final int MAX_SIZE = 20;
-
-    public MinHeap() {
-        heap = new Reservation[MAX_SIZE];
-        size = 0;
-    }
-
-    public boolean isEmpty() { // Check if the heap is empty
-        return size == 0;
-    }
-        
-     // Insert a new reservation into the heap
-    public void insert(int patronID, int priorityNumber, long timeOfReservation) {
-        if (size == MAX_SIZE) {
-            System.out.println("Heap is full, cannot insert more reservations.");
-            return;
-        }
-
-        Reservation newReservation = new Reservation(patronID, priorityNumber, timeOfReservation);
-        heap[size] = newReservation;
-        heapifyUp(size);
-        size++;
-    }
-
-    // Extract the minimum priority reservation from the heap
-    public Reservation extractMin() {
-        if (isEmpty()) {
-            return null;
-        }
-
-        Reservation min = heap[0];
-        heap[0] = heap[size - 1];
-        size--;
-        heapifyDown(0);
-
-        return min;
-    }
-
-    // Method to fix the heap structure upwards from a given index
-    private void heapifyUp(int index) {
-        int parentIndex = (index - 1) / 2;
-        while (index > 0 && compare(heap[index], heap[parentIndex]) < 0) {
-            swap(index, parentIndex);
-            index = parentIndex;
-            parentIndex = (index - 1) / 2;
-        }
-    }
-
-    // Method to fix the heap structure downwards from a given index
-    private void heapifyDown(int index) {
-        int leftChild = 2 * index + 1;
-        int rightChild = 2 * index + 2;
-        int smallest = index;
-
-        if (leftChild < size && compare(heap[leftChild], heap[smallest]) < 0) {
-            smallest = leftChild;
-        }
-
-        if (rightChild < size && compare(heap[rightChild], heap[smallest]) < 0) {
-            smallest = rightChild;
-        }
-
-        if (smallest != index) {
-            swap(index, smallest);
-            heapifyDown(smallest);
-        }
-    }
-
-    // Swap two elements in the heap
-    private void swap(int i, int j) {
-        Reservation temp = heap[i];
-        heap[i] = heap[j];
-        heap[j] = temp;
-    }
-
-    // Compare two reservations based on priority number and time of reservation
-    private int compare(Reservation r1, Reservation r2) {
-        if (r1.priorityNumber != r2.priorityNumber) {
-            return Integer.compare(r1.priorityNumber, r2.priorityNumber);
-        } else {
-            return Long.compare(r1.timeOfReservation, r2.timeOfReservation);
-        }
-    }
-
-     // String representation of the heap
-    public String toString() {
-        StringBuilder result = new StringBuilder("[");
-        for (int i = 0; i < size; i++) {
-            result.append(heap[i].patronID);
-            if (i < size - 1) {
-                result.append(", ");
-            }
-        }
-        result.append("]");
-        return result.toString();
-    }
-}
-
-// Enum for defining colors in a Red-Black Tree
-enum Color {
-    RED, BLACK
-}
-
-
-// Node class for Red-Black Tree
-class Node {
-    int key;
-    Node parent;
-    Node left;
-    Node right;
-    Color color;
-
-    public Node(int key, Color color) {
-        this.key = key;
-        this.color = color;
-        this.left = null;
-        this.right = null;
-        this.parent = null;
-    }
-}
-
-class RedBlackTree {
-   
-   private Node root;
-    private int colorFlipCount;
-    
-
-    public RedBlackTree() {
-        this.root = null;
-        this.colorFlipCount = 0;
-    }
-
-     // Insertion of a node with a given key
-     public void insert(int key) {
-        Node newNode = new Node(key, Color.RED);
-        if (root == null) {
-            root = newNode;
-            root.color = Color.BLACK;
-        } else {
-            Node parent = null;
-            Node current = root;
-            while (current != null) {
-                parent = current;
-                if (key < current.key) {
-                    current = current.left;
-                } else if (key > current.key) {
-                    current = current.right;
-                } else {
-                    // Key already exists
-                    return;
-                }
-            }
-            newNode.parent = parent;
-            if (key < parent.key) {
-                parent.left = newNode;
-            } else {
-                parent.right = newNode;
-            }
-            fixInsert(newNode);
-        }
-    }
-
-
-// Fixing the tree structure after insertion
-  private void fixInsert(Node node) {
-    while (node != null && node != root && node.parent != null && node.parent.color == Color.RED) {
-        Node parent = node.parent;
-        Node grandParent = parent.parent;
-
-        if (grandParent != null) {
-            if (parent == grandParent.left) {
-                Node uncle = grandParent.right;
-
-                if (uncle != null && uncle.color == Color.RED) {
-                    parent.color = Color.BLACK;
-                    uncle.color = Color.BLACK;
-                    grandParent.color = Color.RED;
-                    node = grandParent;
-                } else {
-                    if (node == parent.right) {
-                        node = parent;
-                        rotateLeft(node);
-                        parent = node.parent; // Update parent after rotation
-                                               
-                    }
-                    if (parent != null) {
-                        parent.color = Color.BLACK;
-                    }
-                    if (grandParent != null) {
-                        grandParent.color = Color.RED;
-                        rotateRight(grandParent); 
-                    }
-                }
-            } else {
-                Node uncle = grandParent.left;
-                if (uncle != null && uncle.color == Color.RED) {
-                    parent.color = Color.BLACK;
-                    uncle.color = Color.BLACK;
-                    grandParent.color = Color.RED;
-                    node = grandParent;
-                    
-                } else {
-                    if (node == parent.left) {
-                        node = parent;
-                        rotateRight(node);
-                        parent = node.parent; // Update parent after rotation                        
-                    }
-                    if (parent != null) {
-                        parent.color = Color.BLACK;
-                    }
-                    if (grandParent != null) {
-                        grandParent.color = Color.RED;
-                        rotateLeft(grandParent);
-                    }
-                }
-            }
-        }
-    }
-    if (root != null) {
-        root.color = Color.BLACK;
-    }
-}
-    // Rotate a node to the left
-    private void rotateLeft(Node node) {
-        Node rightChild = node.right;
-        node.right = rightChild.left;
-        if (rightChild.left != null) {
-            rightChild.left.parent = node;
-        }
-        rightChild.parent = node.parent;
-        if (node.parent == null) {
-            root = rightChild;
-        } else if (node == node.parent.left) {
-            node.parent.left = rightChild;
-        } else {
-            node.parent.right = rightChild;
-        }
-        rightChild.left = node;
-        node.parent = rightChild;
-         if (node.color != rightChild.color) {
-        colorFlipCount++;
-        }
-    }    
-
-     // Rotate a node to the right
-    private void rotateRight(Node node) {
-        Node leftChild = node.left;
-        node.left = leftChild.right;
-        if (leftChild.right != null) {
-            leftChild.right.parent = node;
-        }
-        leftChild.parent = node.parent;
-        if (node.parent == null) {
-            root = leftChild;
-        } else if (node == node.parent.right) {
-            node.parent.right = leftChild;
-        } else {
-            node.parent.left = leftChild;
-        }
-        leftChild.right = node;
-        node.parent = leftChild;
-        if (node.color != leftChild.color) {
-            colorFlipCount++;
-        }
-    }
-     
-    // Deletion of a node with a given key
-     public void delete(int key) {
-        Node nodeToDelete = search(root, key);
-        if (nodeToDelete == null) {
-            // Node not found
-            return;
-        }
-        Node deletedNode = deleteNode(nodeToDelete);         
-          if (deletedNode != null && deletedNode.color == Color.BLACK) {
-            fixDelete(deletedNode); // Increment count for black node deletion
-        }
-        
-    }    
-     private Node deleteNode(Node node) {
-        Node deletedNode;
-        if (node.left == null || node.right == null) {
-            deletedNode = node;
-        } else {
-            deletedNode = successor(node);
-        }
-        Node child;
-        if (deletedNode.left != null) {
-            child = deletedNode.left;
-        } else {
-            child = deletedNode.right;
-        }
-        if (child != null) {
-            child.parent = deletedNode.parent;
-        }
-        if (deletedNode.parent == null) {
-            root = child;
-        } else if (deletedNode == deletedNode.parent.left) {
-            deletedNode.parent.left = child;
-        } else {
-            deletedNode.parent.right = child;
-        }
-        if (deletedNode != node) {
-            node.key = deletedNode.key;
-        }
-        if (deletedNode.color == Color.BLACK) {
-            return child;
-        }
-        return null;
-    }
-
-    // Fixing the tree structure after deletion
-     private void fixDelete(Node node) {
-        while (node!=null && node != root && node.color == Color.BLACK) {
-            if (node == node.parent.left) {
-                Node sibling = node.parent.right;
-                if (sibling.color == Color.RED) {
-                    sibling.color = Color.BLACK;
-                    node.parent.color = Color.RED;
-                    rotateLeft(node.parent);            
-                    sibling = node.parent.right;
-                }
-                 if (sibling.right.color == Color.BLACK)  {
-                    sibling.color = Color.RED;
-                    node = node.parent;
-                } else {
-                    if (sibling.right.color == Color.BLACK) {
-                        sibling.left.color = Color.BLACK;
-                        sibling.color = Color.RED;
-                        rotateRight(sibling);            
-                        sibling = node.parent.right;
-                    }
-                    sibling.color = node.parent.color;
-                    node.parent.color = Color.BLACK;
-                    sibling.right.color = Color.BLACK;                    
-                        rotateLeft(node.parent);                       
-                        node = root;
-                }
-            } else {
-                Node sibling = node.parent.left;
-                if (sibling.color == Color.RED) {
-                    sibling.color = Color.BLACK;
-                    node.parent.color = Color.RED;
-                    rotateRight(node.parent);                     
-                    sibling = node.parent.left;
-                }
-                if (sibling.right.color == Color.BLACK) {
-                    sibling.color = Color.RED;
-                    node = node.parent;
-                } else {
-                    if (sibling.left.color == Color.BLACK) {
-                        sibling.right.color = Color.BLACK;
-                        sibling.color = Color.RED;
-                        rotateLeft(sibling);          
-                        sibling = node.parent.left;
-                    }
-                    sibling.color = node.parent.color;
-                    node.parent.color = Color.BLACK;
-                    sibling.left.color = Color.BLACK;                    
-                        rotateRight(node.parent);          
-                        node = root;
-                    }                    
-                }
-                node=node.parent;
-            }
-            if (node != null) {
-            node.color = Color.BLACK;
-            }
-        }
-               
-    // Helper methods for delete operation
-    private Node search(Node node, int key) {
-        if (node == null || node.key == key) {
-            return node;
-        }
-        if (key < node.key) {
-            return search(node.left, key);
-        }
-        return search(node.right, key);
-    }
-
-    private Node successor(Node node) {
-        Node current = node.right;
-        while (current.left != null) {
-            current = current.left;
-        }
-        return current;
-    }
-
-    public Node findClosestNode(int targetID) {  
-      return findClosestNode(root, targetID);
-    }
-     
-    private Node findClosestNode(Node root, int targetID) {
-        if (root == null) return null;
-        Node closest = root;
-        while (root != null) {
-            if (Math.abs(root.key - targetID) < Math.abs(closest.key - targetID)) {
-                closest = root;
-            }
-            if (targetID < root.key) {
-                root = root.left;
-            } else if (targetID > root.key) {
-                root = root.right;
-            } else {
-                return root;
-            }
-        }
-        return closest;
-    }     
-
-    public int getColorFlipCount() {
-              return colorFlipCount;
-    }
-  
-public Object getRoot() {
-    return null;
-}
-}
-
-class Book {
-    int bookID;
-    String title;
-    String author;
-    String availabilityStatus;
-    int borrowedBy;
-    MinHeap reservationHeap;
-
-    public Book(int bookID, String title, String author, String availabilityStatus, int borrowedBy) {
-        this.bookID = bookID;
-        this.title = title;
-        this.author = author;
-        this.availabilityStatus = availabilityStatus;
-        this.borrowedBy = borrowedBy;
-        this.reservationHeap = new MinHeap();
-    }
-}
-
-class GatorLib {
-    private RedBlackTree redBlackTree;
-    private Map<Integer, Book> books;
-     private static final boolean RED = true;
-    private static final boolean BLACK = false;
-    private int colorFlipCount;
-    
-    class Node {
-        int key;
-        Node left, right;
-        boolean color;
-        Node(int key) {
-            this.key = key;
-            this.color = RED;
-        }
-    }
-
-    public GatorLib() {
-        this.redBlackTree = new RedBlackTree();
-        this.books = new HashMap<>();
-        this.colorFlipCount = 0;
-    }
-   
-    private void insertBook(int bookID, String title, String author, String availabilityStatus, int borrowedBy, BufferedWriter bw) throws IOException {
-        if (books.containsKey(bookID)) { // If book already exists
-            bw.write("\n"+"Book already exists with ID: " + bookID + "\n");
-            return;
-        }
-        Book book = new Book(bookID, title, author, availabilityStatus, borrowedBy);
-        books.put(bookID, book);
-        redBlackTree.insert(bookID);
-        colorFlipCount += 1; // Update color flip count after insertion
-       
-    }
-
-    private void borrowBook(int patronID, int bookID, int patronPriority, BufferedWriter bw) throws IOException {
-        Book book = books.get(bookID);
-        if (book == null) { //if the book is not found in the library
-            bw.write("\n" + "Book not found in the Library\n");
-            return;
-        }
-        if ("Yes".equals(book.availabilityStatus)) { // When the book is avaiable
-            book.availabilityStatus = "No";
-            book.borrowedBy = patronID;
-            bw.write("\n" + "Book " + bookID + " Borrowed by Patron " + patronID + "\n");
-            
-        } else {
-            book.reservationHeap.insert(patronID, patronPriority, System.currentTimeMillis());
-            bw.write("\n" + "Book " + bookID + " Reserved by Patron " + patronID + "\n");
-        }        
-     redBlackTree.insert(bookID);
-     colorFlipCount += 1; // Update color flip count after borrowing
-      }
-
-
-    private void returnBook(int patronID, int bookID, BufferedWriter bw) throws IOException {   
-        Book book = books.get(bookID);
-        if (book == null) {
-            bw.write("\n" + "Book not found in the Library\n");
-            return;
-        }
-        //Update book status
-        book.availabilityStatus = "Yes";
-        book.borrowedBy = -1;
-        // Check if there are reservations
-        if (!book.reservationHeap.isEmpty()) {
-            // Get the top patron from the reservation heap
-            Reservation reservation = book.reservationHeap.extractMin();
-            book.borrowedBy = reservation.patronID;
-            bw.write("\n" + "Book " + bookID + " Returned by Patron " + patronID + "\n");
-            bw.write("\n" + "Book " + bookID + " Allotted to Patron " + reservation.patronID + "\n");         
-        } else {
-            bw.write("\n" + "Book " + bookID + " Returned by Patron " + patronID + "\n");
-        }
-       redBlackTree.delete(bookID);
-        colorFlipCount += 1; // Update color flip count after returning*/
-    }
-
-private void deleteBook(int bookID, BufferedWriter bw) throws IOException {
-    Book book = books.get(bookID);
-    if (book == null) {
-        bw.write("Book not found in the Library\n");
-        return;
-    }
-    int prevColorFlipCount = redBlackTree.getColorFlipCount(); // Update color flip count before deletion
-    books.remove(bookID);
-    int currentColorFlipCount = redBlackTree.getColorFlipCount();// Update color flip count after the book removal from the map  
-    redBlackTree.delete(bookID);// Delete the book from the Red-Black Tree    
-    colorFlipCount += (currentColorFlipCount - prevColorFlipCount);// Calculate the change in color flip count and update the overall count
-        if (!book.reservationHeap.isEmpty()) { // Notify patrons about book unavailability
-        bw.write("\n"+"Book " + bookID + " is no longer available. Reservations made by Patrons ");
-        while (!book.reservationHeap.isEmpty()) {
-            Reservation reservation = book.reservationHeap.extractMin();
-            bw.write(" "+reservation.patronID + " ");
-        }
-        bw.write("have been cancelled!\n"+"\n");
-    } else {
-        bw.write("\n"+"Book "+bookID+" is no longer available.\n");
-    }
-}
-
-private void printBook(int bookID, BufferedWriter bw) throws IOException {
-    Book book = books.get(bookID);
-    if (book == null) { // If the book is not found
-    bw.write("Book " + bookID + " not found in the Library\n");
-    } else {
-      String formattedTitle = formatWithSpaces(book.title);
-      String formattedAuthor = formatWithSpaces(book.author);
-     bw.write("\n"+"BookID = " + book.bookID + "\n" +
-            "Title = \"" + formattedTitle + "\"\n" +
-            "Author = \"" + formattedAuthor + "\"\n" +
-            "Availability = \"" + (book.availabilityStatus.equals("Yes") ? "No" : "Yes") + "\"\n" +
-            "BorrowedBy = \"" + (book.borrowedBy == -1 ? "None" : book.borrowedBy) + "\"\n" +
-            "Reservations = " + book.reservationHeap + "\n");
-    }
-}
-
-private String formatWithSpaces(String input) {
-    String[] words = input.split("(?=[A-Z])");
-    return String.join(" ", words);
-}
-
-private void printBooks(int bookID1, int bookID2, BufferedWriter bw) throws IOException {
-    for (int i = bookID1; i <= bookID2; i++) {   
-        if (books.containsKey(i)) {  // Print the books presenbt in-between
-            printBook(i, bw);
-        } 
-    }
-}
-
-public int findClosestBook(int bookID,BufferedWriter bw) throws IOException {
-    if (books.containsKey(bookID)) {
-        printBook(bookID, bw);; // If the bookID exists, return the same ID
-    } else {
-        Integer lowerID = null;
-        Integer higherID = null;
-
-        for (int id : books.keySet()) {
-            if (id < bookID && (lowerID == null || id > lowerID)) {
-                lowerID = id;
-            }
-            if (id > bookID && (higherID == null || id < higherID)) {
-                higherID = id;
-            }
-        }
-        // Determine the closest book ID based on proximity
-        if (lowerID == null && higherID == null) {
-            return -1; // No available book IDs
-        } else
-         printBook(lowerID, bw);
-            printBook(higherID, bw); 
-        }           
-    return bookID;
-}
-
-private void colorFlipCount(BufferedWriter bw) throws IOException {
-    int treeColorFlipCount = redBlackTree.getColorFlipCount();
-     bw.write("\n"+"Colour Flip Count: " + (colorFlipCount + treeColorFlipCount) + "\n");
-    
-}
-
-    public void processOperation(String operation) {
-       
-        System.out.println("Processing Operation: " + operation);
-    }
-
-     public void executeOperationsFromFile(String inputFilename) {
-        try (BufferedReader br = new BufferedReader(new FileReader(inputFilename));
-             BufferedWriter bw = new BufferedWriter(new FileWriter(getOutputFilename(inputFilename)))) {
-
-            String line;
-            while ((line = br.readLine()) != null) {
-                processOperation(line, bw);
-            }
-
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-    private String getOutputFilename(String inputFilename) {
-        int dotIndex = inputFilename.lastIndexOf('.');
-        if (dotIndex == -1) {
-            return inputFilename + "_output_file.txt";
-        } else {
-            return inputFilename.substring(0, dotIndex) + "_output_file.txt";
-        }
-    }
-    public void processOperation(String operation, BufferedWriter bw) throws IOException {
-     String[] tokens = operation.split("\\((?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)", -1);
-    String command = tokens[0].trim();
-
-
-
-    switch (command) {
-        case "InsertBook":
-            String[] insertArgs = tokens[1].replaceAll("[\"\\)\\s]", "").split(",");
-            if (insertArgs.length >= 4) {
-                int bookID = Integer.parseInt(insertArgs[0].trim());
-                String title = insertArgs[1].trim();
-                String author = insertArgs[2].trim();
-                String availabilityStatus = insertArgs[3].trim();
-                int borrowedBy = -1; // Initial value for a new book
-                insertBook(bookID, title, author, availabilityStatus, borrowedBy, bw);
-            } else {
-                bw.write("Invalid InsertBook operation: " + operation + "\n");
-            }
-            break;
-        case "PrintBook":
-            int printBookID = Integer.parseInt(tokens[1].replaceAll("[\\)\\s]", ""));
-            printBook(printBookID, bw);
-            break;
-
-        case "PrintBooks":
-            String[] printBooksArgs = tokens[1].replaceAll("[\\)\\s]", "").split(",");
-            int bookID1 = Integer.parseInt(printBooksArgs[0]);
-            int bookID2 = Integer.parseInt(printBooksArgs[1]);
-            printBooks(bookID1, bookID2, bw);
-            break;
-
-        case "BorrowBook":
-            String[] borrowArgs = tokens[1].replaceAll("[\\)\\s]", "").split(",");
-            int patronID = Integer.parseInt(borrowArgs[0]);
-            int borrowBookID = Integer.parseInt(borrowArgs[1]);
-            int patronPriority = Integer.parseInt(borrowArgs[2]);
-            borrowBook(patronID, borrowBookID, patronPriority, bw);
-            break;
-
-        case "ReturnBook":
-            String[] returnArgs = tokens[1].replaceAll("[\\)\\s]", "").split(",");
-            int returnPatronID = Integer.parseInt(returnArgs[0]);
-            int returnBookID = Integer.parseInt(returnArgs[1]);
-            returnBook(returnPatronID, returnBookID, bw);
-            break;
-
-        case "DeleteBook":
-            int deleteBookID = Integer.parseInt(tokens[1].replaceAll("[\\)\\s]", ""));
-            deleteBook(deleteBookID, bw);
-            break;
-
-        case "FindClosestBook":
-            int targetID = Integer.parseInt(tokens[1].replaceAll("[\\)\\s]", ""));
-            findClosestBook(targetID, bw);
-            break;
-
-        case "ColorFlipCount":
-            colorFlipCount(bw);
-            break;
-
-        case "Quit":
-            bw.write("\n"+"Program Terminated!!\n");
-            bw.close();
-            System.exit(0);
-
-        default:
-            bw.write("Invalid operation: " + operation + "\n");
-            break;
-    }
-}
-
-
-}
-
-public class gatorLibrary{
-    public static void main(String[] args) {
-        if (args.length < 1) {
-            System.out.println("Usage: java gatorLib input_file");
-            return;
-        }
-
-        GatorLib gatorLibrary = new GatorLib();
-        gatorLibrary.executeOperationsFromFile(args[0]);
-    }
-}
-
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+class Reservation {
+    int patronID;// ID of the patron making the reservation
+    int priorityNumber; // Priority assigned to the reservation
+    long timeOfReservation; // Time at which the reservation was made
+    // Constructor to initialize reservation details
+    public Reservation(int patronID, int priorityNumber, long timeOfReservation) {
+        this.patronID = patronID;
+        this.priorityNumber = priorityNumber;
+        this.timeOfReservation = timeOfReservation;
+    }
+}
+
+class MinHeap {
+    // Reservations are kept in parallel primitive arrays, index i of each array is one heap entry
+    private int[] patronIDs;
+    private int[] priorityNumbers;
+    private long[] reservationTimes;
+    private int size;
+    // Position map from patron ID to heap index, open addressing with linear probing. A slot holds
+    // index + 1 so that 0 marks it empty. A patron has at most one entry, so remove and changePriority
+    // find it in O(1) and restore the heap in O(log n).
+    private int[] positionKeys;
+    private int[] positionValues;
+    private static final int INITIAL_CAPACITY = 4;
+    private static final int[] EMPTY_INTS = new int[0];
+    private static final long[] EMPTY_LONGS = new long[0];
+
+    public MinHeap() {
+        // Most books never get a reservation, so storage is allocated on first insert
+        patronIDs = EMPTY_INTS;
+        priorityNumbers = EMPTY_INTS;
+        reservationTimes = EMPTY_LONGS;
+        positionKeys = EMPTY_INTS;
+        positionValues = EMPTY_INTS;
+        size = 0;
+    }
+
+    public boolean isEmpty() { // Check if the heap is empty
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Levels of the heap, which a sift up or down walks at most once
+    public int depth() {
+        return depthOf(size);
+    }
+
+    // Levels of any heap holding size reservations
+    static int depthOf(int size) {
+        return 32 - Integer.numberOfLeadingZeros(size);
+    }
+
+    // Patron ID at the given position of the heap array, in the same order toString lists them
+    public int patronAt(int index) {
+        return patronIDs[index];
+    }
+
+    public int priorityAt(int index) {
+        return priorityNumbers[index];
+    }
+
+    public long timeAt(int index) {
+        return reservationTimes[index];
+    }
+
+    public boolean contains(int patronID) {
+        return indexOf(patronID) >= 0;
+    }
+        
+     // Insert a new reservation into the heap; the caller ensures the patron has none yet
+    public void insert(int patronID, int priorityNumber, long timeOfReservation) {
+        if (size == patronIDs.length) {
+            grow();
+        }
+        patronIDs[size] = patronID;
+        priorityNumbers[size] = priorityNumber;
+        reservationTimes[size] = timeOfReservation;
+        setPosition(patronID, size);
+        heapifyUp(size);
+        size++;
+    }
+
+    // Double the capacity of all three arrays, and of the position map to twice that
+    private void grow() {
+        int capacity = patronIDs.length == 0 ? INITIAL_CAPACITY : patronIDs.length * 2;
+        patronIDs = Arrays.copyOf(patronIDs, capacity);
+        priorityNumbers = Arrays.copyOf(priorityNumbers, capacity);
+        reservationTimes = Arrays.copyOf(reservationTimes, capacity);
+        positionKeys = new int[capacity * 2];
+        positionValues = new int[capacity * 2];
+        for (int i = 0; i < size; i++) {
+            setPosition(patronIDs[i], i);
+        }
+    }
+
+    // Extract the minimum priority reservation from the heap
+    public Reservation extractMin() {
+        if (isEmpty()) {
+            return null;
+        }
+
+        Reservation min = new Reservation(patronIDs[0], priorityNumbers[0], reservationTimes[0]);
+        removeAt(0);
+
+        return min;
+    }
+
+    // Cancel the reservation of patronID; returns false if it has none
+    public boolean remove(int patronID) {
+        int index = indexOf(patronID);
+        if (index < 0) {
+            return false;
+        }
+        removeAt(index);
+        return true;
+    }
+
+    // Give the reservation of patronID a new priority, keeping its place among equal priorities;
+    // returns false if it has none
+    public boolean changePriority(int patronID, int priorityNumber) {
+        int index = indexOf(patronID);
+        if (index < 0) {
+            return false;
+        }
+        priorityNumbers[index] = priorityNumber;
+        // At most one of these moves anything
+        heapifyUp(index);
+        heapifyDown(index);
+        return true;
+    }
+
+    private void removeAt(int index) {
+        clearPosition(patronIDs[index]);
+        size--;
+        if (index == size) {
+            return;
+        }
+        move(size, index);
+        heapifyUp(index);
+        heapifyDown(index);
+    }
+
+    // Method to fix the heap structure upwards from a given index
+    private void heapifyUp(int index) {
+        int parentIndex = (index - 1) / 2;
+        while (index > 0 && compare(index, parentIndex) < 0) {
+            swap(index, parentIndex);
+            index = parentIndex;
+            parentIndex = (index - 1) / 2;
+        }
+    }
+
+    // Method to fix the heap structure downwards from a given index
+    private void heapifyDown(int index) {
+        while (true) {
+            int leftChild = 2 * index + 1;
+            int rightChild = leftChild + 1;
+            int smallest = index;
+
+            if (leftChild < size && compare(leftChild, smallest) < 0) {
+                smallest = leftChild;
+            }
+
+            if (rightChild < size && compare(rightChild, smallest) < 0) {
+                smallest = rightChild;
+            }
+
+            if (smallest == index) {
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    // Copy the entry at index from into index to
+    private void move(int from, int to) {
+        patronIDs[to] = patronIDs[from];
+        priorityNumbers[to] = priorityNumbers[from];
+        reservationTimes[to] = reservationTimes[from];
+        setPosition(patronIDs[to], to);
+    }
+
+    // Swap two elements in the heap
+    private void swap(int i, int j) {
+        int tempPatron = patronIDs[i];
+        patronIDs[i] = patronIDs[j];
+        patronIDs[j] = tempPatron;
+        int tempPriority = priorityNumbers[i];
+        priorityNumbers[i] = priorityNumbers[j];
+        priorityNumbers[j] = tempPriority;
+        long tempTime = reservationTimes[i];
+        reservationTimes[i] = reservationTimes[j];
+        reservationTimes[j] = tempTime;
+        setPosition(patronIDs[i], i);
+        setPosition(patronIDs[j], j);
+    }
+
+    // Compare two reservations based on priority number and time of reservation
+    private int compare(int i, int j) {
+        if (priorityNumbers[i] != priorityNumbers[j]) {
+            return Integer.compare(priorityNumbers[i], priorityNumbers[j]);
+        } else {
+            return Long.compare(reservationTimes[i], reservationTimes[j]);
+        }
+    }
+
+    private int indexOf(int patronID) {
+        if (size == 0) {
+            return -1;
+        }
+        int mask = positionKeys.length - 1;
+        for (int slot = BookTable.hash(patronID) & mask; positionValues[slot] != 0; slot = (slot + 1) & mask) {
+            if (positionKeys[slot] == patronID) {
+                return positionValues[slot] - 1;
+            }
+        }
+        return -1;
+    }
+
+    private void setPosition(int patronID, int index) {
+        int mask = positionKeys.length - 1;
+        int slot = BookTable.hash(patronID) & mask;
+        while (positionValues[slot] != 0 && positionKeys[slot] != patronID) {
+            slot = (slot + 1) & mask;
+        }
+        positionKeys[slot] = patronID;
+        positionValues[slot] = index + 1;
+    }
+
+    // Delete patronID from the position map, shifting later entries of its probe run back into the hole
+    private void clearPosition(int patronID) {
+        int mask = positionKeys.length - 1;
+        int hole = BookTable.hash(patronID) & mask;
+        while (positionKeys[hole] != patronID) {
+            hole = (hole + 1) & mask;
+        }
+        for (int slot = (hole + 1) & mask; positionValues[slot] != 0; slot = (slot + 1) & mask) {
+            int home = BookTable.hash(positionKeys[slot]) & mask;
+            // Move the entry if its home is not in the cyclic range (hole, slot]
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                positionKeys[hole] = positionKeys[slot];
+                positionValues[hole] = positionValues[slot];
+                hole = slot;
+            }
+        }
+        positionValues[hole] = 0;
+    }
+
+     // String representation of the heap
+    public String toString() {
+        StringBuilder result = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            result.append(patronIDs[i]);
+            if (i < size - 1) {
+                result.append(", ");
+            }
+        }
+        result.append("]");
+        return result.toString();
+    }
+}
+
+// Red-black tree of book IDs. Nodes are slots in a NodeStore rather than objects, so NIL stands
+// in for null throughout.
+class RedBlackTree {
+   
+    static final int NIL = NodeStore.NIL;
+    static final long NO_KEY = Long.MIN_VALUE; // floorKey and ceilingKey when there is no such key
+    private final NodeStore nodes;
+    private int root = NIL;
+    private int colorFlipCount;
+    // Rebalancing work since the tree was created, for TreeStats. Written only by the thread holding
+    // the catalog write lock; others may read values a few operations old. Rebuilds from sorted keys
+    // or an image add nothing.
+    private long leftRotations;
+    private long rightRotations;
+    private long recolorings;      // Colour changes made by the fix-ups
+    private long insertFixups;     // Inserts that had to fix a red-red violation
+    private long insertFixIterations;
+    private long deleteFixups;     // Deletes that removed a black node and had to restore black height
+    private long deleteFixIterations;
+    private static final int SHAPE_BLACK = 1;
+    private static final int SHAPE_LEFT = 2;
+    private static final int SHAPE_RIGHT = 4;
+    
+
+    public RedBlackTree() {
+        this(NodeStore.onHeap());
+    }
+
+    RedBlackTree(NodeStore nodes) {
+        this.nodes = nodes;
+        this.colorFlipCount = 0;
+    }
+
+     // Insertion of a node with a given key
+     public void insert(int key) {
+        NodeStore s = nodes;
+        if (s.isFull()) {
+            root = s.grow(root);
+        }
+        if (root == NIL) {
+            root = s.newNode(key, false);
+        } else {
+            int parent = NIL;
+            int current = root;
+            while (current != NIL) {
+                parent = current;
+                int currentKey = s.key(current);
+                if (key < currentKey) {
+                    current = s.left(current);
+                } else if (key > currentKey) {
+                    current = s.right(current);
+                } else {
+                    // Key already exists
+                    return;
+                }
+            }
+            int newNode = s.newNode(key, true);
+            s.setParent(newNode, parent);
+            if (key < s.key(parent)) {
+                s.setLeft(parent, newNode);
+            } else {
+                s.setRight(parent, newNode);
+            }
+            for (int ancestor = parent; ancestor != NIL; ancestor = s.parent(ancestor)) {
+                s.setSize(ancestor, s.size(ancestor) + 1);
+            }
+            updateHeights(parent);
+            fixInsert(newNode);
+        }
+    }
+
+
+// Fixing the tree structure after insertion
+  private void fixInsert(int node) {
+    NodeStore s = nodes;
+    if (node != root && s.isRed(s.parent(node))) {
+        insertFixups++;
+    }
+    while (node != NIL && node != root && s.parent(node) != NIL && s.isRed(s.parent(node))) {
+        insertFixIterations++;
+        int parent = s.parent(node);
+        int grandParent = s.parent(parent);
+
+        if (grandParent != NIL) {
+            if (parent == s.left(grandParent)) {
+                int uncle = s.right(grandParent);
+
+                if (s.isRed(uncle)) {
+                    recolor(parent, false);
+                    recolor(uncle, false);
+                    recolor(grandParent, true);
+                    node = grandParent;
+                } else {
+                    if (node == s.right(parent)) {
+                        node = parent;
+                        rotateLeft(node);
+                        parent = s.parent(node); // Update parent after rotation
+                                               
+                    }
+                    if (parent != NIL) {
+                        recolor(parent, false);
+                    }
+                    recolor(grandParent, true);
+                    rotateRight(grandParent); 
+                }
+            } else {
+                int uncle = s.left(grandParent);
+                if (s.isRed(uncle)) {
+                    recolor(parent, false);
+                    recolor(uncle, false);
+                    recolor(grandParent, true);
+                    node = grandParent;
+                    
+                } else {
+                    if (node == s.left(parent)) {
+                        node = parent;
+                        rotateRight(node);
+                        parent = s.parent(node); // Update parent after rotation                        
+                    }
+                    if (parent != NIL) {
+                        recolor(parent, false);
+                    }
+                    recolor(grandParent, true);
+                    rotateLeft(grandParent);
+                }
+            }
+        }
+    }
+    if (root != NIL) {
+        recolor(root, false);
+    }
+}
+    // Sets a node's colour in a fix-up, counting it if it changes. Nil reads as black and is never
+    // made red, so it is left unwritten.
+    private void recolor(int node, boolean red) {
+        if (nodes.isRed(node) != red) {
+            nodes.setRed(node, red);
+            recolorings++;
+        }
+    }
+
+    // Rotate a node to the left
+    private void rotateLeft(int node) {
+        leftRotations++;
+        NodeStore s = nodes;
+        int rightChild = s.right(node);
+        int grandChild = s.left(rightChild);
+        s.setRight(node, grandChild);
+        if (grandChild != NIL) {
+            s.setParent(grandChild, node);
+        }
+        int parent = s.parent(node);
+        s.setParent(rightChild, parent);
+        if (parent == NIL) {
+            root = rightChild;
+        } else if (node == s.left(parent)) {
+            s.setLeft(parent, rightChild);
+        } else {
+            s.setRight(parent, rightChild);
+        }
+        s.setLeft(rightChild, node);
+        s.setParent(node, rightChild);
+        s.setSize(rightChild, s.size(node));
+        s.setSize(node, s.size(s.left(node)) + s.size(grandChild) + 1);
+        s.setHeight(node, heightFromChildren(node));
+        s.setHeight(rightChild, heightFromChildren(rightChild));
+        updateHeights(parent);
+         if (s.isRed(node) != s.isRed(rightChild)) {
+        colorFlipCount++;
+        }
+    }    
+
+     // Rotate a node to the right
+    private void rotateRight(int node) {
+        rightRotations++;
+        NodeStore s = nodes;
+        int leftChild = s.left(node);
+        int grandChild = s.right(leftChild);
+        s.setLeft(node, grandChild);
+        if (grandChild != NIL) {
+            s.setParent(grandChild, node);
+        }
+        int parent = s.parent(node);
+        s.setParent(leftChild, parent);
+        if (parent == NIL) {
+            root = leftChild;
+        } else if (node == s.right(parent)) {
+            s.setRight(parent, leftChild);
+        } else {
+            s.setLeft(parent, leftChild);
+        }
+        s.setRight(leftChild, node);
+        s.setParent(node, leftChild);
+        s.setSize(leftChild, s.size(node));
+        s.setSize(node, s.size(grandChild) + s.size(s.right(node)) + 1);
+        s.setHeight(node, heightFromChildren(node));
+        s.setHeight(leftChild, heightFromChildren(leftChild));
+        updateHeights(parent);
+        if (s.isRed(node) != s.isRed(leftChild)) {
+            colorFlipCount++;
+        }
+    }
+
+    private int heightFromChildren(int node) {
+        return 1 + Math.max(nodes.height(nodes.left(node)), nodes.height(nodes.right(node)));
+    }
+
+    // Recomputes heights from node up towards the root after node's children changed, stopping at the
+    // first node whose height comes out the same, since nothing above it changes either
+    private void updateHeights(int node) {
+        NodeStore s = nodes;
+        for (; node != NIL; node = s.parent(node)) {
+            int height = heightFromChildren(node);
+            if (height == s.height(node)) {
+                return;
+            }
+            s.setHeight(node, height);
+        }
+    }
+     
+    // Deletion of a node with a given key
+     public void delete(int key) {
+        int nodeToDelete = search(key);
+        if (nodeToDelete == NIL) {
+            // Node not found
+            return;
+        }
+        deleteNode(nodeToDelete);
+    }
+
+     private void deleteNode(int node) {
+        NodeStore s = nodes;
+        int deletedNode;
+        if (s.left(node) == NIL || s.right(node) == NIL) {
+            deletedNode = node;
+        } else {
+            deletedNode = successor(node);
+        }
+        int child;
+        if (s.left(deletedNode) != NIL) {
+            child = s.left(deletedNode);
+        } else {
+            child = s.right(deletedNode);
+        }
+        // The child may be nil, so its parent is tracked separately for the fix-up
+        int childParent = s.parent(deletedNode);
+        if (child != NIL) {
+            s.setParent(child, childParent);
+        }
+        if (childParent == NIL) {
+            root = child;
+        } else if (deletedNode == s.left(childParent)) {
+            s.setLeft(childParent, child);
+        } else {
+            s.setRight(childParent, child);
+        }
+        if (deletedNode != node) {
+            s.setKey(node, s.key(deletedNode));
+        }
+        for (int ancestor = childParent; ancestor != NIL; ancestor = s.parent(ancestor)) {
+            s.setSize(ancestor, s.size(ancestor) - 1);
+        }
+        updateHeights(childParent);
+        boolean removedBlack = !s.isRed(deletedNode);
+        s.free(deletedNode);
+        if (removedBlack) {
+            fixDelete(child, childParent); // Removing a black node shortens one path
+        }
+    }
+
+    // Fixing the tree structure after deletion; node carries the extra black and may be nil, which
+    // reads as black
+     private void fixDelete(int node, int parent) {
+        NodeStore s = nodes;
+        deleteFixups++;
+        while (node != root && !s.isRed(node)) {
+            deleteFixIterations++;
+            if (node == s.left(parent)) {
+                int sibling = s.right(parent);
+                if (s.isRed(sibling)) {
+                    recolor(sibling, false);
+                    recolor(parent, true);
+                    rotateLeft(parent);
+                    sibling = s.right(parent);
+                }
+                if (!s.isRed(s.left(sibling)) && !s.isRed(s.right(sibling))) {
+                    recolor(sibling, true);
+                    node = parent;
+                    parent = s.parent(node);
+                } else {
+                    if (!s.isRed(s.right(sibling))) {
+                        recolor(s.left(sibling), false);
+                        recolor(sibling, true);
+                        rotateRight(sibling);
+                        sibling = s.right(parent);
+                    }
+                    recolor(sibling, s.isRed(parent));
+                    recolor(parent, false);
+                    recolor(s.right(sibling), false);
+                    rotateLeft(parent);
+                    node = root;
+                }
+            } else {
+                int sibling = s.left(parent);
+                if (s.isRed(sibling)) {
+                    recolor(sibling, false);
+                    recolor(parent, true);
+                    rotateRight(parent);
+                    sibling = s.left(parent);
+                }
+                if (!s.isRed(s.left(sibling)) && !s.isRed(s.right(sibling))) {
+                    recolor(sibling, true);
+                    node = parent;
+                    parent = s.parent(node);
+                } else {
+                    if (!s.isRed(s.left(sibling))) {
+                        recolor(s.right(sibling), false);
+                        recolor(sibling, true);
+                        rotateLeft(sibling);
+                        sibling = s.left(parent);
+                    }
+                    recolor(sibling, s.isRed(parent));
+                    recolor(parent, false);
+                    recolor(s.left(sibling), false);
+                    rotateRight(parent);
+                    node = root;
+                }
+            }
+        }
+        if (node != NIL) {
+            recolor(node, false);
+        }
+    }
+               
+    // Helper methods for delete operation
+    private int search(int key) {
+        NodeStore s = nodes;
+        int node = root;
+        while (node != NIL) {
+            int nodeKey = s.key(node);
+            if (key == nodeKey) {
+                return node;
+            }
+            node = key < nodeKey ? s.left(node) : s.right(node);
+        }
+        return NIL;
+    }
+
+    public boolean contains(int key) {
+        return search(key) != NIL;
+    }
+
+    private int successor(int node) {
+        int current = nodes.right(node);
+        while (nodes.left(current) != NIL) {
+            current = nodes.left(current);
+        }
+        return current;
+    }
+
+    public long findClosestKey(int targetID) {  
+        NodeStore s = nodes;
+        int node = root;
+        if (node == NIL) return NO_KEY;
+        int closest = s.key(node);
+        while (node != NIL) {
+            int key = s.key(node);
+            if (Math.abs(key - targetID) < Math.abs(closest - targetID)) {
+                closest = key;
+            }
+            if (targetID < key) {
+                node = s.left(node);
+            } else if (targetID > key) {
+                node = s.right(node);
+            } else {
+                return key;
+            }
+        }
+        return closest;
+    }     
+
+    // Largest key <= targetID, or NO_KEY if every key is larger
+    public long floorKey(int targetID) {
+        NodeStore s = nodes;
+        int current = root;
+        long candidate = NO_KEY;
+        while (current != NIL) {
+            int key = s.key(current);
+            if (key <= targetID) {
+                candidate = key;
+                current = s.right(current);
+            } else {
+                current = s.left(current);
+            }
+        }
+        return candidate;
+    }
+
+    // Smallest key >= targetID, or NO_KEY if every key is smaller
+    public long ceilingKey(int targetID) {
+        int node = ceiling(targetID);
+        return node == NIL ? NO_KEY : nodes.key(node);
+    }
+
+    private int ceiling(int targetID) {
+        NodeStore s = nodes;
+        int current = root;
+        int candidate = NIL;
+        while (current != NIL) {
+            if (s.key(current) >= targetID) {
+                candidate = current;
+                current = s.left(current);
+            } else {
+                current = s.right(current);
+            }
+        }
+        return candidate;
+    }
+
+    public int size() {
+        return nodes.size(root);
+    }
+
+    // Number of keys below key, O(log n)
+    public int rank(int key) {
+        NodeStore s = nodes;
+        int rank = 0;
+        int current = root;
+        while (current != NIL) {
+            if (key <= s.key(current)) {
+                current = s.left(current);
+            } else {
+                rank += s.size(s.left(current)) + 1;
+                current = s.right(current);
+            }
+        }
+        return rank;
+    }
+
+    // Number of keys at or below key, O(log n)
+    private int countAtMost(int key) {
+        NodeStore s = nodes;
+        int count = 0;
+        int current = root;
+        while (current != NIL) {
+            if (key < s.key(current)) {
+                current = s.left(current);
+            } else {
+                count += s.size(s.left(current)) + 1;
+                current = s.right(current);
+            }
+        }
+        return count;
+    }
+
+    // The node holding the index-th smallest key, counting from 0, or NIL if there are not that many
+    private int select(int index) {
+        NodeStore s = nodes;
+        int current = root;
+        while (current != NIL) {
+            int leftSize = s.size(s.left(current));
+            if (index < leftSize) {
+                current = s.left(current);
+            } else if (index == leftSize) {
+                return current;
+            } else {
+                index -= leftSize + 1;
+                current = s.right(current);
+            }
+        }
+        return NIL;
+    }
+
+    // Number of keys in [lowID, highID], O(log n)
+    public int countInRange(int lowID, int highID) {
+        return lowID > highID ? 0 : countAtMost(highID) - rank(lowID);
+    }
+
+    // In-order successor of any node, following parent links when there is no right subtree
+    private int nextNode(int node) {
+        if (nodes.right(node) != NIL) {
+            return successor(node);
+        }
+        int parent = nodes.parent(node);
+        while (parent != NIL && node == nodes.right(parent)) {
+            node = parent;
+            parent = nodes.parent(parent);
+        }
+        return parent;
+    }
+
+    // Iterates the keys in [lowID, highID] in ascending order, O(log n + k)
+    public PrimitiveIterator.OfInt rangeIterator(int lowID, int highID) {
+        return new RangeIterator(lowID > highID ? NIL : ceiling(lowID), highID, Integer.MAX_VALUE);
+    }
+
+    // Iterates at most limit of the keys in [lowID, highID], skipping the first offset of them. The
+    // first key is found by select, so a page costs O(log n + limit) however deep into the range it is.
+    public PrimitiveIterator.OfInt rangeIterator(int lowID, int highID, int offset, int limit) {
+        if (lowID > highID || offset < 0 || limit <= 0) {
+            return new RangeIterator(NIL, highID, 0);
+        }
+        long first = (long) rank(lowID) + offset;
+        return new RangeIterator(first < size() ? select((int) first) : NIL, highID, limit);
+    }
+
+    private class RangeIterator implements PrimitiveIterator.OfInt {
+        private int next;
+        private final int highID;
+        private int remaining;
+
+        RangeIterator(int start, int highID, int limit) {
+            this.highID = highID;
+            this.remaining = limit;
+            this.next = (start != NIL && nodes.key(start) <= highID && limit > 0) ? start : NIL;
+        }
+
+        public boolean hasNext() {
+            return next != NIL;
+        }
+
+        public int nextInt() {
+            if (next == NIL) {
+                throw new NoSuchElementException();
+            }
+            int key = nodes.key(next);
+            int following = --remaining > 0 ? nextNode(next) : NIL;
+            next = (following != NIL && nodes.key(following) <= highID) ? following : NIL;
+            return key;
+        }
+    }
+
+    public int getColorFlipCount() {
+              return colorFlipCount;
+    }
+
+    // Nodes on the longest root-to-leaf path, kept per node as the tree changes, so O(1)
+    public int height() {
+        return nodes.height(root);
+    }
+
+    // Black nodes from the root down to any leaf; the same on every path, so the left spine will do
+    public int blackHeight() {
+        int blackHeight = 0;
+        for (int node = root; node != NIL; node = nodes.left(node)) {
+            if (!nodes.isRed(node)) {
+                blackHeight++;
+            }
+        }
+        return blackHeight;
+    }
+
+    long leftRotations() {
+        return leftRotations;
+    }
+
+    long rightRotations() {
+        return rightRotations;
+    }
+
+    long recolorings() {
+        return recolorings;
+    }
+
+    long insertFixups() {
+        return insertFixups;
+    }
+
+    long insertFixIterations() {
+        return insertFixIterations;
+    }
+
+    long deleteFixups() {
+        return deleteFixups;
+    }
+
+    long deleteFixIterations() {
+        return deleteFixIterations;
+    }
+
+    // Writes one flag byte per node in preorder. Together with the sorted keys this is enough to
+    // rebuild the exact tree, so a restored tree goes on rotating, and counting flips, the same way.
+    void writeShape(DataOutputStream out) throws IOException {
+        if (root != NIL) {
+            writeShape(root, out);
+        }
+    }
+
+    private void writeShape(int node, DataOutputStream out) throws IOException {
+        int left = nodes.left(node);
+        int right = nodes.right(node);
+        out.writeByte((nodes.isRed(node) ? 0 : SHAPE_BLACK)
+                | (left != NIL ? SHAPE_LEFT : 0) | (right != NIL ? SHAPE_RIGHT : 0));
+        if (left != NIL) {
+            writeShape(left, out);
+        }
+        if (right != NIL) {
+            writeShape(right, out);
+        }
+    }
+
+    // Replaces the tree with one holding sortedKeys[0, count), built top-down from the middle key in O(n)
+    // with no rotations and no colour flips. Every level is full except possibly the deepest, whose nodes
+    // are red, so black heights match everywhere (the same scheme as TreeMap.buildFromSorted).
+    void buildFromSorted(int[] sortedKeys, int count) {
+        int redLevel = 0;
+        for (int m = count - 1; m >= 0; m = m / 2 - 1) {
+            redLevel++;
+        }
+        nodes.clear(count);
+        root = count == 0 ? NIL : buildFromSorted(sortedKeys, 0, count - 1, 0, redLevel, NIL);
+    }
+
+    private int buildFromSorted(int[] sortedKeys, int low, int high, int level, int redLevel, int parent) {
+        int middle = (low + high) >>> 1;
+        int node = nodes.newNode(sortedKeys[middle], level == redLevel);
+        nodes.setParent(node, parent);
+        nodes.setSize(node, high - low + 1);
+        if (low < middle) {
+            nodes.setLeft(node, buildFromSorted(sortedKeys, low, middle - 1, level + 1, redLevel, node));
+        }
+        if (middle < high) {
+            nodes.setRight(node, buildFromSorted(sortedKeys, middle + 1, high, level + 1, redLevel, node));
+        }
+        nodes.setHeight(node, heightFromChildren(node));
+        return node;
+    }
+
+    // Replaces this tree with the one writeShape described, handing out sortedKeys in order
+    void restoreShape(ByteBuffer shape, int[] sortedKeys, int colorFlipCount) {
+        this.colorFlipCount = colorFlipCount;
+        int[] nextKey = {0};
+        nodes.clear(sortedKeys.length);
+        root = sortedKeys.length == 0 ? NIL : restoreShape(shape, sortedKeys, nextKey, NIL);
+    }
+
+    private int restoreShape(ByteBuffer shape, int[] sortedKeys, int[] nextKey, int parent) {
+        int flags = shape.get();
+        int node = nodes.newNode(0, (flags & SHAPE_BLACK) == 0);
+        nodes.setParent(node, parent);
+        if ((flags & SHAPE_LEFT) != 0) {
+            nodes.setLeft(node, restoreShape(shape, sortedKeys, nextKey, node));
+        }
+        nodes.setKey(node, sortedKeys[nextKey[0]++]);
+        if ((flags & SHAPE_RIGHT) != 0) {
+            nodes.setRight(node, restoreShape(shape, sortedKeys, nextKey, node));
+        }
+        nodes.setSize(node, nodes.size(nodes.left(node)) + nodes.size(nodes.right(node)) + 1);
+        nodes.setHeight(node, heightFromChildren(node));
+        return node;
+    }
+  
+public Object getRoot() {
+    return null;
+}
+}
+
+class Book {
+    int bookID;
+    String title;
+    String author;
+    String availabilityStatus;
+    int borrowedBy;
+    MinHeap reservationHeap;
+    long reservationClock; // Orders equal-priority reservations by arrival; wall-clock millis tie
+    long stamp; // Snapshot epoch of the last change; snapshots opened later see the fields above
+    BookVersion history; // Earlier states open snapshots may still see, newest first
+    final byte[] displayTitle; // title and author as PrintBook shows them, encoded once at insert
+    final byte[] displayAuthor;
+    volatile byte[] rendered; // This state's PrintBook record while RenderCache keeps it, else null
+    volatile boolean renderReferenced; // RenderCache's CLOCK bit, set by hits
+    int renderSlot = -1; // Position in RenderCache's ring, guarded by the cache
+
+    public Book(int bookID, String title, String author, String availabilityStatus, int borrowedBy) {
+        this.bookID = bookID;
+        this.title = title;
+        this.author = author;
+        this.displayTitle = ResponseWriter.spaced(title);
+        this.displayAuthor = ResponseWriter.spaced(author);
+        this.availabilityStatus = availabilityStatus;
+        this.borrowedBy = borrowedBy;
+        this.reservationHeap = new MinHeap();
+    }
+}
+
+// A state of a book kept for CatalogSnapshots: what PrintBook showed from epoch stamp until the next
+// newer state's change. Guarded by the book's lock, like the book itself.
+final class BookVersion {
+    final long stamp;
+    final String availabilityStatus;
+    final int borrowedBy;
+    final int[] reservations; // Patron IDs in heap order, as PrintBook lists them
+    BookVersion older;
+
+    BookVersion(Book book, BookVersion older) {
+        this.stamp = book.stamp;
+        this.availabilityStatus = book.availabilityStatus;
+        this.borrowedBy = book.borrowedBy;
+        this.reservations = new int[book.reservationHeap.size()];
+        for (int i = 0; i < reservations.length; i++) {
+            reservations[i] = book.reservationHeap.patronAt(i);
+        }
+        this.older = older;
+    }
+}
+
+// Commands accepted in an operation file; the signature lists the argument kinds: I = int,
+// S = string with whitespace removed, Q = string kept verbatim. Arguments past requiredArgs may be
+// left out.
+enum OperationType {
+    INSERT_BOOK("InsertBook", "ISSS"),
+    PRINT_BOOK("PrintBook", "I"),
+    PRINT_BOOKS("PrintBooks", "IIII", 2), // Optional offset and limit for one page of the range
+    BORROW_BOOK("BorrowBook", "III"),
+    RETURN_BOOK("ReturnBook", "II"),
+    DELETE_BOOK("DeleteBook", "I"),
+    FIND_CLOSEST_BOOK("FindClosestBook", "I"),
+    COLOR_FLIP_COUNT("ColorFlipCount", ""),
+    EXPORT_CATALOG("ExportCatalog", "Q"),
+    BULK_LOAD("BulkLoad", "I"),
+    CANCEL_RESERVATION("CancelReservation", "II"),
+    CHANGE_PRIORITY("ChangePriority", "III"),
+    PRINT_PATRON("PrintPatron", "I"),
+    COUNT_BOOKS("CountBooks", "II"),
+    FIND_BOOKS_BY_AUTHOR("FindBooksByAuthor", "QI"),
+    SEARCH_TITLE("SearchTitle", "QI"),
+    REPLICATION_STATUS("ReplicationStatus", ""),
+    TREE_STATS("TreeStats", "I", 0), // Optional bookID for that book's reservation heap alone
+    QUIT("Quit", "");
+
+    private static final OperationType[] VALUES = values();
+
+    final String commandName;
+    final String signature;
+    final int requiredArgs;
+
+    OperationType(String commandName, String signature) {
+        this(commandName, signature, signature.length());
+    }
+
+    OperationType(String commandName, String signature, int requiredArgs) {
+        this.commandName = commandName;
+        this.signature = signature;
+        this.requiredArgs = requiredArgs;
+    }
+
+    // "2" or, with optional arguments, "2 to 4", for error messages
+    String argumentCount() {
+        return requiredArgs == signature.length() ? String.valueOf(requiredArgs) : requiredArgs + " to " + signature.length();
+    }
+
+    // Look up a command by name without materialising the name as a String
+    static OperationType match(CharSequence input, int start, int end) {
+        for (OperationType type : VALUES) {
+            String name = type.commandName;
+            if (name.length() != end - start) {
+                continue;
+            }
+            int i = 0;
+            while (i < name.length() && name.charAt(i) == input.charAt(start + i)) {
+                i++;
+            }
+            if (i == name.length()) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
+
+// Single pass parser for one operation line, e.g. InsertBook(3, "Title", "Author", "Yes").
+// The parsed command and its arguments are held in reusable fields, so parsing any command other
+// than InsertBook allocates nothing. String arguments have their quotes and whitespace removed.
+class OperationParser {
+    static final int MAX_ARGS = 4;
+
+    OperationType type;
+    final int[] intArgs = new int[MAX_ARGS];
+    final String[] stringArgs = new String[MAX_ARGS];
+    int argCount; // Arguments given, which is less than the signature's when optional ones are left out
+    private String error;
+
+    private final StringBuilder text = new StringBuilder();
+    private CharSequence input;
+    private int lineStart;
+    private int pos;
+    private int end;
+
+    // Parses a line and returns true on success; on failure type may be null and error() describes the problem
+    public boolean parse(CharSequence line) {
+        return parse(line, 0, line.length());
+    }
+
+    public boolean parse(CharSequence line, int start, int limit) {
+        input = line;
+        lineStart = start;
+        pos = start;
+        end = limit;
+        type = null;
+        error = null;
+
+        skipWhitespace();
+        int nameStart = pos;
+        while (pos < end && Character.isLetter(input.charAt(pos))) {
+            pos++;
+        }
+        type = OperationType.match(input, nameStart, pos);
+        if (type == null) {
+            return fail("unknown command");
+        }
+        skipWhitespace();
+        String signature = type.signature;
+        argCount = 0;
+        if (pos == end) {
+            // Commands without arguments may omit the parentheses
+            return signature.isEmpty() || fail("expected '('");
+        }
+        if (input.charAt(pos) != '(') {
+            return fail("expected '('");
+        }
+        pos++;
+        skipWhitespace();
+        if (pos < end && input.charAt(pos) != ')') {
+            while (true) {
+                if (argCount == signature.length()) {
+                    return fail("expected " + type.argumentCount() + " arguments");
+                }
+                char kind = signature.charAt(argCount);
+                boolean parsed = kind == 'I' ? parseInt(argCount) : parseString(argCount, kind == 'S');
+                if (!parsed) {
+                    return false;
+                }
+                argCount++;
+                skipWhitespace();
+                if (pos < end && input.charAt(pos) == ',') {
+                    pos++;
+                    skipWhitespace();
+                } else {
+                    break;
+                }
+            }
+        }
+        if (pos == end || input.charAt(pos) != ')') {
+            return fail("expected ')'");
+        }
+        pos++;
+        if (argCount < type.requiredArgs) {
+            return fail("expected " + type.argumentCount() + " arguments, found " + argCount);
+        }
+        skipWhitespace();
+        if (pos != end) {
+            return fail("unexpected trailing input");
+        }
+        return true;
+    }
+
+    public String error() {
+        return error;
+    }
+
+    private boolean parseInt(int index) {
+        boolean negative = false;
+        if (pos < end && (input.charAt(pos) == '-' || input.charAt(pos) == '+')) {
+            negative = input.charAt(pos) == '-';
+            pos++;
+        }
+        int digitsStart = pos;
+        // Accumulate negatively so that Integer.MIN_VALUE is representable
+        long value = 0;
+        while (pos < end) {
+            char c = input.charAt(pos);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = value * 10 - (c - '0');
+            if (value < Integer.MIN_VALUE) {
+                return fail("integer out of range");
+            }
+            pos++;
+        }
+        if (pos == digitsStart) {
+            return fail("expected an integer");
+        }
+        if (!negative && value == Integer.MIN_VALUE) {
+            return fail("integer out of range");
+        }
+        intArgs[index] = (int) (negative ? value : -value);
+        return true;
+    }
+
+    private boolean parseString(int index, boolean stripWhitespace) {
+        text.setLength(0);
+        if (pos < end && input.charAt(pos) == '"') {
+            pos++;
+            while (pos < end && input.charAt(pos) != '"') {
+                char c = input.charAt(pos++);
+                if (!stripWhitespace || !Character.isWhitespace(c)) {
+                    text.append(c);
+                }
+            }
+            if (pos == end) {
+                return fail("unterminated string");
+            }
+            pos++;
+        } else {
+            while (pos < end) {
+                char c = input.charAt(pos);
+                if (c == ',' || c == ')' || Character.isWhitespace(c)) {
+                    break;
+                }
+                text.append(c);
+                pos++;
+            }
+            if (text.length() == 0) {
+                return fail("expected a string");
+            }
+        }
+        stringArgs[index] = text.toString();
+        return true;
+    }
+
+    private void skipWhitespace() {
+        while (pos < end && Character.isWhitespace(input.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private boolean fail(String message) {
+        error = message + " at column " + (pos - lineStart + 1);
+        return false;
+    }
+}
+
+// CharSequence view over a range of ASCII bytes, so a line can be parsed without decoding it to a String
+class AsciiLine implements CharSequence {
+    private ByteBuffer buffer;
+    private int start;
+    private int end;
+
+    AsciiLine wrap(ByteBuffer buffer, int start, int end) {
+        this.buffer = buffer;
+        this.start = start;
+        this.end = end;
+        return this;
+    }
+
+    public int length() {
+        return end - start;
+    }
+
+    public char charAt(int index) {
+        return (char) (buffer.get(start + index) & 0xff);
+    }
+
+    public CharSequence subSequence(int from, int to) {
+        return new AsciiLine().wrap(buffer, start + from, start + to);
+    }
+
+    public String toString() {
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
+
+// Buffered response sink that writes ints, pre-encoded byte fragments and ASCII text straight into a
+// reusable direct ByteBuffer and hands it to the channel in large blocks. Text that is not ASCII is
+// encoded with the platform charset, matching what a FileWriter would produce.
+class ResponseWriter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+
+    private final WritableByteChannel channel; // null for an in-memory writer
+    private ByteBuffer buffer;
+
+    ResponseWriter(WritableByteChannel channel) {
+        this(channel, BUFFER_SIZE);
+    }
+
+    ResponseWriter(WritableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.buffer = channel == null ? ByteBuffer.allocate(bufferSize) : ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    // Keeps everything written in a buffer that grows as needed, until transferTo hands it on
+    static ResponseWriter inMemory(int initialSize) {
+        return new ResponseWriter(null, initialSize);
+    }
+
+    // Sink for responses nobody reads, e.g. while replaying the journal
+    static ResponseWriter discard() {
+        return new ResponseWriter(Channels.newChannel(OutputStream.nullOutputStream()), 1 << 12);
+    }
+
+    static ResponseWriter toFile(String filename) throws IOException {
+        return new ResponseWriter(FileChannel.open(Paths.get(filename),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public void write(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.remaining()) {
+            makeRoom(bytes.length);
+            if (bytes.length > buffer.remaining()) {
+                write(ByteBuffer.wrap(bytes));
+                return;
+            }
+        }
+        buffer.put(bytes);
+    }
+
+    public void write(ByteBuffer bytes) throws IOException {
+        if (bytes.remaining() > buffer.remaining()) {
+            makeRoom(bytes.remaining());
+            if (bytes.remaining() > buffer.remaining()) {
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+                return;
+            }
+        }
+        buffer.put(bytes);
+    }
+
+    // Appends everything written to this in-memory writer to target, then empties it
+    void transferTo(ResponseWriter target) throws IOException {
+        buffer.flip();
+        target.write(buffer);
+        buffer.clear();
+    }
+
+    int capacity() {
+        return buffer.capacity();
+    }
+
+    // Writes the decimal digits of value without going through a String
+    public void write(int value) throws IOException {
+        if (buffer.remaining() < 11) {
+            makeRoom(11);
+        }
+        long magnitude = value;
+        if (magnitude < 0) {
+            buffer.put((byte) '-');
+            magnitude = -magnitude;
+        }
+        int digits = 1;
+        for (long limit = 10; digits < 10 && magnitude >= limit; limit *= 10) {
+            digits++;
+        }
+        int position = buffer.position();
+        for (int i = position + digits - 1; i >= position; i--) {
+            buffer.put(i, (byte) ('0' + magnitude % 10));
+            magnitude /= 10;
+        }
+        buffer.position(position + digits);
+    }
+
+    public void write(CharSequence text) throws IOException {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                write(text.subSequence(i, length).toString().getBytes(CHARSET));
+                return;
+            }
+            if (!buffer.hasRemaining()) {
+                makeRoom(1);
+            }
+            buffer.put((byte) c);
+        }
+    }
+
+    // Encodes text with a space inserted before every capital letter after the first character,
+    // e.g. "BookTitleOne" becomes "Book Title One"
+    static byte[] spaced(String text) {
+        StringBuilder spaced = new StringBuilder(text.length() + 8);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (i > 0 && c >= 'A' && c <= 'Z') {
+                spaced.append(' ');
+            }
+            spaced.append(c);
+        }
+        return spaced.toString().getBytes(CHARSET);
+    }
+
+    // Makes sure length more bytes fit before the buffer next flushes, so they can be read back
+    // with bytesSince
+    void reserve(int length) throws IOException {
+        if (buffer.remaining() < length) {
+            makeRoom(length);
+        }
+    }
+
+    int position() {
+        return buffer.position();
+    }
+
+    // Copy of the bytes written since position, which must be after the last flush
+    byte[] bytesSince(int position) {
+        byte[] bytes = new byte[buffer.position() - position];
+        buffer.get(position, bytes);
+        return bytes;
+    }
+
+    public void flush() throws IOException {
+        if (channel != null) {
+            flushBuffer();
+        }
+    }
+
+    public void close() throws IOException {
+        if (channel != null && channel.isOpen()) {
+            flushBuffer();
+            channel.close();
+        }
+    }
+
+    // Frees at least needed bytes by flushing, or for an in-memory writer by growing the buffer. A
+    // channel writer may still have less room than needed if needed exceeds its whole buffer.
+    private void makeRoom(int needed) throws IOException {
+        if (channel != null) {
+            flushBuffer();
+            return;
+        }
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + needed));
+        buffer.flip();
+        larger.put(buffer);
+        buffer = larger;
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
+
+// Open-addressing hash table from book ID to Book with linear probing. Keys are stored unboxed in an
+// int[] next to a parallel Book[]; a null Book marks an empty slot, so every int is a usable ID.
+class BookTable {
+    private static final int MIN_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 30; // Largest power of two an array can hold
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private int[] keys;
+    private Book[] values;
+    private int size;
+    private int mask;
+    private int resizeAt;
+
+    public BookTable() {
+        this(0);
+    }
+
+    // Presize the table so that expectedSize books fit without rehashing
+    public BookTable(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < MAX_CAPACITY && capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    // Grow once, ahead of a bulk load, instead of doubling repeatedly on the way to expectedSize
+    public void ensureCapacity(int expectedSize) {
+        int capacity = capacityFor(expectedSize);
+        if (capacity > keys.length) {
+            rehash(capacity);
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Book[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    // Murmur3 finalizer, so sequential IDs spread over the table
+    static int hash(int key) {
+        int h = key * 0x85ebca6b;
+        h ^= h >>> 16;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    public Book get(int key) {
+        int slot = hash(key) & mask;
+        Book value;
+        while ((value = values[slot]) != null) {
+            if (keys[slot] == key) {
+                return value;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    // Insert or replace, returning the previous Book for the key
+    public Book put(int key, Book book) {
+        int slot = hash(key) & mask;
+        Book value;
+        while ((value = values[slot]) != null) {
+            if (keys[slot] == key) {
+                values[slot] = book;
+                return value;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = book;
+        if (++size > resizeAt) {
+            rehash(keys.length << 1);
+        }
+        return null;
+    }
+
+    public Book remove(int key) {
+        int slot = hash(key) & mask;
+        Book value;
+        while ((value = values[slot]) != null) {
+            if (keys[slot] == key) {
+                shiftBack(slot);
+                size--;
+                return value;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    // Backward-shift deletion: move later entries of the probe run into the hole, so no tombstones are needed
+    private void shiftBack(int hole) {
+        int slot = hole;
+        while (true) {
+            slot = (slot + 1) & mask;
+            Book value = values[slot];
+            if (value == null) {
+                break;
+            }
+            int home = hash(keys[slot]) & mask;
+            // Move the entry only if its home slot is not cyclically within (hole, slot]
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                keys[hole] = keys[slot];
+                values[hole] = value;
+                hole = slot;
+            }
+        }
+        values[hole] = null;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        Book[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            Book value = oldValues[i];
+            if (value != null) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = value;
+            }
+        }
+    }
+}
+
+// Thread safety: commands that add or remove books (InsertBook, DeleteBook) hold the catalog write
+// lock, so the BookTable and RedBlackTree are only restructured while nothing else runs. Every other
+// command holds the catalog read lock, and anything that reads or changes one book's state also holds
+// that book's stripe lock, so borrows and returns of books on different stripes proceed in parallel.
+class GatorLib {
+    private RedBlackTree redBlackTree;
+    private final boolean offHeapTree; // Whether the tree keeps its nodes outside the Java heap
+    private BookTable books;
+    private CatalogIndex index = new CatalogIndex(); // Author and title-word lookups
+    private PatronIndex patrons = new PatronIndex(); // Books each patron has borrowed and reserved
+    private final LongAdder colorFlipCount = new LongAdder();
+    private final OperationParser parser = new OperationParser();
+    private final AsciiLine mappedLine = new AsciiLine();
+    private final ReentrantReadWriteLock catalogLock = new ReentrantReadWriteLock();
+    private final Object[] bookLocks = new Object[LOCK_STRIPES];
+    private static final int LOCK_STRIPES = 1024;
+    private LibraryJournal journal; // Write-ahead log of mutations, null when running without durability
+    private ChangeStream changes; // Mutations streamed to followers, null when not leading any
+    private volatile Replica replica; // The stream this library follows, null unless it is a read-only follower
+    private final ResponseWriter replayOutput = ResponseWriter.discard();
+    final CommandMetrics metrics = new CommandMetrics();
+    // IDs inserted since BulkLoad that are not in the tree yet; null when no bulk load is open
+    private volatile int[] bulkKeys;
+    private int bulkCount;
+    private static final int MAX_BULK_LOAD_HINT = 1 << 22;
+    private boolean replayedBulkLoad; // Between a replayed BULK_LOAD record and its END_BULK_LOAD
+    private static final int MAP_WINDOW_SIZE = 1 << 26;
+    // Snapshot versioning. The persistent tree mirrors redBlackTree for readers that hold no lock;
+    // the epoch counts snapshots opened, and a book's first change in a new epoch keeps its old state
+    // in Book.history while an open snapshot still sees it. Root and epoch are published together,
+    // so no lock is needed to open a snapshot: writers swap in a new root and readers a new epoch,
+    // each by compareAndSet. openSnapshots counts the open snapshots of each version.
+    private final AtomicReference<Published> published = new AtomicReference<>(new Published(null, 0));
+    private final ConcurrentSkipListMap<Long, Integer> openSnapshots = new ConcurrentSkipListMap<>();
+    private final ConcurrentLinkedQueue<Book> versionedBooks = new ConcurrentLinkedQueue<>();
+    final RenderCache renderCache; // PrintBook records of recently printed books, null when disabled
+    private final ReservationTotals reservationTotals = new ReservationTotals();
+    static final int DEFAULT_RENDER_CACHE_ENTRIES = 65536;
+    // Room a record needs beyond its title, author and reservations: the field labels and two numbers
+    private static final int RECORD_OVERHEAD = 160;
+
+    // Pre-encoded fragments of every response, so nothing is concatenated or encoded per command
+    private static final byte[] NEWLINE = ResponseWriter.ascii("\n");
+    private static final byte[] SPACE = ResponseWriter.ascii(" ");
+    private static final byte[] BOOK = ResponseWriter.ascii("\nBook ");
+    private static final byte[] BOOK_EXISTS = ResponseWriter.ascii("\nBook already exists with ID: ");
+    private static final byte[] BOOK_NOT_FOUND = ResponseWriter.ascii("Book not found in the Library\n");
+    private static final byte[] BOOK_NOT_FOUND_PREFIX = ResponseWriter.ascii("Book ");
+    private static final byte[] NOT_FOUND_IN_LIBRARY = ResponseWriter.ascii(" not found in the Library\n");
+    private static final byte[] BORROWED_BY = ResponseWriter.ascii(" Borrowed by Patron ");
+    private static final byte[] RESERVED_BY = ResponseWriter.ascii(" Reserved by Patron ");
+    private static final byte[] RETURNED_BY = ResponseWriter.ascii(" Returned by Patron ");
+    private static final byte[] ALLOTTED_TO = ResponseWriter.ascii(" Allotted to Patron ");
+    private static final byte[] NO_LONGER_AVAILABLE = ResponseWriter.ascii(" is no longer available.\n");
+    private static final byte[] NO_LONGER_AVAILABLE_CANCELLED = ResponseWriter.ascii(" is no longer available. Reservations made by Patrons ");
+    private static final byte[] HAVE_BEEN_CANCELLED = ResponseWriter.ascii("have been cancelled!\n\n");
+    private static final byte[] BOOK_ID_FIELD = ResponseWriter.ascii("\nBookID = ");
+    private static final byte[] TITLE_FIELD = ResponseWriter.ascii("\nTitle = \"");
+    private static final byte[] AUTHOR_FIELD = ResponseWriter.ascii("\"\nAuthor = \"");
+    private static final byte[] AVAILABILITY_FIELD = ResponseWriter.ascii("\"\nAvailability = \"");
+    private static final byte[] BORROWED_BY_FIELD = ResponseWriter.ascii("\"\nBorrowedBy = \"");
+    private static final byte[] RESERVATIONS_FIELD = ResponseWriter.ascii("\"\nReservations = [");
+    private static final byte[] LIST_SEPARATOR = ResponseWriter.ascii(", ");
+    private static final byte[] LIST_END = ResponseWriter.ascii("]\n");
+    private static final byte[] YES = ResponseWriter.ascii("Yes");
+    private static final byte[] NO = ResponseWriter.ascii("No");
+    private static final byte[] NONE = ResponseWriter.ascii("None");
+    private static final byte[] ALREADY_BORROWED_BY = ResponseWriter.ascii(" already borrowed by Patron ");
+    private static final byte[] ALREADY_RESERVED_BY = ResponseWriter.ascii(" already reserved by Patron ");
+    private static final byte[] NOT_BORROWED_BY = ResponseWriter.ascii(" is not borrowed by Patron ");
+    private static final byte[] RESERVATION_CANCELLED = ResponseWriter.ascii(" Reservation cancelled for Patron ");
+    private static final byte[] PRIORITY_CHANGED = ResponseWriter.ascii(" Reservation priority changed for Patron ");
+    private static final byte[] NOT_RESERVED_BY = ResponseWriter.ascii(" has no reservation by Patron ");
+    private static final byte[] PATRON_ID_FIELD = ResponseWriter.ascii("\nPatronID = ");
+    private static final byte[] BORROWED_FIELD = ResponseWriter.ascii("\nBorrowed = [");
+    private static final byte[] RESERVED_FIELD = ResponseWriter.ascii("]\nReserved = [");
+    private static final byte[] BOOK_COUNT = ResponseWriter.ascii("\nBook Count: ");
+    private static final byte[] NO_BOOKS_FOUND = ResponseWriter.ascii("\nNo books found\n");
+    private static final byte[] COLOUR_FLIP_COUNT = ResponseWriter.ascii("\nColour Flip Count: ");
+    private static final byte[] PROGRAM_TERMINATED = ResponseWriter.ascii("\nProgram Terminated!!\n");
+
+    public GatorLib() {
+        this(false, DEFAULT_RENDER_CACHE_ENTRIES);
+    }
+
+    GatorLib(boolean offHeapTree, int renderCacheEntries) {
+        this.offHeapTree = offHeapTree;
+        this.renderCache = renderCacheEntries > 0 ? new RenderCache(renderCacheEntries) : null;
+        this.redBlackTree = newTree();
+        this.books = new BookTable();
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            bookLocks[i] = new Object();
+        }
+    }
+
+    // Log every later mutation to journal. Attach after LibraryJournal.recover has rebuilt the state.
+    void attachJournal(LibraryJournal journal) {
+        this.journal = journal;
+    }
+
+    // Stream every later mutation to changes; its subscribers are added with subscribe
+    void attachChangeStream(ChangeStream changes) {
+        this.changes = changes;
+    }
+
+    // Starts the attached change stream's output to channel with an image of the catalog as it is now.
+    // The catalog write lock keeps mutations out until the image is taken; the stream sends it to
+    // channel once the lock is released.
+    void subscribe(WritableByteChannel channel) throws IOException {
+        catalogLock.writeLock().lock();
+        try {
+            finishBulkLoad();
+            changes.subscribe(channel);
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+    }
+
+    // Makes this library a read-only follower of replica's stream and starts applying it. Commands
+    // that would change the catalog are refused from now on.
+    void follow(Replica replica) {
+        this.replica = replica;
+        replica.start();
+    }
+
+    // Replaces the catalog with a follower's starting image and returns the stream sequence it includes
+    long loadFollowerImage(Path image) throws IOException {
+        catalogLock.writeLock().lock();
+        try {
+            return CatalogImage.load(image, this);
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+    }
+
+    // Applies one change-stream record, under the catalog lock the command itself would take
+    void applyChange(byte type, DataInputStream payload) throws IOException {
+        Lock lock = type == LibraryJournal.INSERT_BOOK || type == LibraryJournal.DELETE_BOOK
+                || type == LibraryJournal.BULK_LOAD || type == LibraryJournal.END_BULK_LOAD
+                ? catalogLock.writeLock() : catalogLock.readLock();
+        lock.lock();
+        try {
+            LibraryJournal.apply(this, type, payload);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Re-apply journaled mutations during recovery; responses are discarded
+    void replayInsertBook(int bookID, String title, String author, String availabilityStatus) throws IOException {
+        if (replayedBulkLoad && bulkKeys == null) {
+            // A follower's own reads ended the load early. Reopening it makes the leader's END build
+            // the tree from the same keys the leader's did, and building depends only on the keys.
+            bulkKeys = new int[16];
+            bulkCount = 0;
+        }
+        insertBook(bookID, title, author, availabilityStatus, -1, replayOutput);
+    }
+
+    void replayBorrowBook(int patronID, int bookID, int patronPriority) throws IOException {
+        borrowBook(patronID, bookID, patronPriority, replayOutput);
+    }
+
+    void replayReturnBook(int patronID, int bookID) throws IOException {
+        returnBook(patronID, bookID, replayOutput);
+    }
+
+    void replayDeleteBook(int bookID) throws IOException {
+        deleteBook(bookID, replayOutput);
+    }
+
+    void replayCancelReservation(int patronID, int bookID) throws IOException {
+        cancelReservation(patronID, bookID, replayOutput);
+    }
+
+    void replayChangePriority(int patronID, int bookID, int patronPriority) throws IOException {
+        changePriority(patronID, bookID, patronPriority, replayOutput);
+    }
+
+    void replayBulkLoad(int expectedBooks) throws IOException {
+        beginBulkLoad(expectedBooks);
+        replayedBulkLoad = true;
+    }
+
+    void replayEndBulkLoad() throws IOException {
+        replayedBulkLoad = false;
+        finishBulkLoad();
+    }
+
+    // Every book in ID order. The caller must keep mutations out, e.g. by holding the catalog write lock.
+    Book[] booksInOrder() {
+        Book[] ordered = new Book[books.size()];
+        PrimitiveIterator.OfInt ids = redBlackTree.rangeIterator(Integer.MIN_VALUE, Integer.MAX_VALUE);
+        for (int i = 0; ids.hasNext(); i++) {
+            ordered[i] = books.get(ids.nextInt());
+        }
+        return ordered;
+    }
+
+    RedBlackTree tree() {
+        return redBlackTree;
+    }
+
+    // An empty tree with the node storage this library was configured with
+    RedBlackTree newTree() {
+        return new RedBlackTree(offHeapTree ? NodeStore.offHeap() : NodeStore.onHeap());
+    }
+
+    // Flips counted by the library itself; the tree's own count is added when reporting
+    int libraryColorFlipCount() {
+        return colorFlipCount.intValue();
+    }
+
+    // Replaces the catalog of this library with one loaded from a CatalogImage
+    void restore(BookTable books, RedBlackTree redBlackTree, int libraryColorFlipCount) {
+        this.books = books;
+        this.redBlackTree = redBlackTree;
+        if (renderCache != null) {
+            renderCache.clear();
+        }
+        index = new CatalogIndex();
+        patrons = new PatronIndex();
+        reservationTotals.reset();
+        Book[] ordered = booksInOrder();
+        publishRoot(PersistentBookTree.build(ordered, ordered.length), null);
+        for (Book book : ordered) {
+            index.add(book.bookID, book.title, book.author);
+            if (book.borrowedBy != -1) {
+                patrons.borrowed(book.borrowedBy, book.bookID);
+            }
+            reservationTotals.resized(book.bookID, 0, book.reservationHeap.size());
+            for (int i = 0; i < book.reservationHeap.size(); i++) {
+                patrons.reserved(book.reservationHeap.patronAt(i), book.bookID);
+            }
+        }
+        colorFlipCount.reset();
+        colorFlipCount.add(libraryColorFlipCount);
+    }
+
+    // Writes the catalog to an image file; the caller holds the catalog write lock
+    private void exportCatalog(String filename, ResponseWriter out) throws IOException {
+        try {
+            int bookCount = CatalogImage.write(this, Path.of(filename), 0);
+            out.write("\nCatalog exported to " + filename + ": " + bookCount + " books\n");
+        } catch (IOException e) {
+            out.write("\nCatalog export to " + filename + " failed: " + e.getMessage() + "\n");
+        }
+    }
+
+    // BulkLoad(n): makes room for n more books in one rehash, and defers the tree inserts of the
+    // InsertBooks that follow until the load ends. The first command other than InsertBook ends it,
+    // so every other command sees a complete tree. n comes from the input line and is only a sizing
+    // hint, so it is clamped to what is worth allocating up front; a longer load grows as it goes.
+    // Both ends of a load are journaled and streamed, so a recovered library or a follower builds its
+    // tree at the same points and reports the same ColorFlipCount. The caller holds the catalog
+    // write lock.
+    void beginBulkLoad(int expectedBooks) throws IOException {
+        finishBulkLoad();
+        int expected = Math.max(0, Math.min(expectedBooks, MAX_BULK_LOAD_HINT));
+        books.ensureCapacity((int) Math.min(Integer.MAX_VALUE, (long) books.size() + expected));
+        bulkKeys = new int[Math.max(16, expected)];
+        bulkCount = 0;
+        if (journal != null) {
+            journal.logBulkLoad(expected);
+        }
+        if (changes != null) {
+            changes.logBulkLoad(expected);
+        }
+    }
+
+    // BulkLoad for callers that do not hold the catalog write lock
+    void bulkLoad(int expectedBooks) throws IOException {
+        catalogLock.writeLock().lock();
+        try {
+            beginBulkLoad(expectedBooks);
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+    }
+
+    // Completes an open bulk load, if there is one, for callers that do not hold the catalog write lock
+    void endBulkLoad() throws IOException {
+        if (bulkKeys != null) {
+            catalogLock.writeLock().lock();
+            try {
+                finishBulkLoad();
+            } finally {
+                catalogLock.writeLock().unlock();
+            }
+        }
+    }
+
+    // Rebuilds the tree bottom-up from its existing keys merged with the bulk-loaded ones: a sort of
+    // the new IDs, which is linear when they arrive in order, then O(n) for the merge and the build.
+    // The built tree involves no colour flips, so later ColorFlipCount values differ from loading the
+    // same books one InsertBook at a time. The caller holds the catalog write lock.
+    void finishBulkLoad() throws IOException {
+        int[] added = bulkKeys;
+        if (added == null) {
+            return;
+        }
+        bulkKeys = null;
+        if (journal != null) {
+            journal.logEndBulkLoad();
+        }
+        if (changes != null) {
+            changes.logEndBulkLoad();
+        }
+        int addedCount = bulkCount;
+        Arrays.sort(added, 0, addedCount);
+        int[] merged = new int[redBlackTree.size() + addedCount];
+        PrimitiveIterator.OfInt existing = redBlackTree.rangeIterator(Integer.MIN_VALUE, Integer.MAX_VALUE);
+        int a = 0;
+        int i = 0;
+        while (existing.hasNext()) {
+            int key = existing.nextInt();
+            while (a < addedCount && added[a] < key) {
+                merged[i++] = added[a++];
+            }
+            merged[i++] = key;
+        }
+        while (a < addedCount) {
+            merged[i++] = added[a++];
+        }
+        redBlackTree.buildFromSorted(merged, merged.length);
+        Book[] ordered = new Book[merged.length];
+        for (i = 0; i < merged.length; i++) {
+            ordered[i] = books.get(merged[i]);
+        }
+        publishRoot(PersistentBookTree.build(ordered, ordered.length), null);
+    }
+
+    // Forgets a book deleted before the open bulk load put it in the tree. execute ends a load before
+    // any DeleteBook, so this only matters to callers that apply deletes directly.
+    private void dropBulkKey(int bookID) {
+        for (int i = 0; i < bulkCount; i++) {
+            if (bulkKeys[i] == bookID) {
+                bulkKeys[i] = bulkKeys[--bulkCount];
+                return;
+            }
+        }
+    }
+
+    // Snapshot the library and empty the journal once enough mutations have been logged
+    private void checkpoint() throws IOException {
+        catalogLock.writeLock().lock();
+        try {
+            finishBulkLoad();
+            if (journal.snapshotDue()) {
+                journal.writeSnapshot(this);
+            }
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+    }
+
+    // Monitor guarding the mutable state of one book
+    private Object lockFor(int bookID) {
+        return bookLocks[BookTable.hash(bookID) & (LOCK_STRIPES - 1)];
+    }
+
+    // The persistent tree the next snapshot opens, and the epoch book stamps are compared against.
+    // Every book in root was stamped at or before epoch, so a snapshot opened at a later epoch sees
+    // each one's current state unless a change since has kept an older one for it.
+    private static final class Published {
+        final PersistentBookTree.Node root;
+        final long epoch;
+
+        Published(PersistentBookTree.Node root, long epoch) {
+            this.root = root;
+            this.epoch = epoch;
+        }
+    }
+
+    // Opens a snapshot of the catalog as it is now, taking no lock. The new version is registered
+    // before it is published, so a change that reads the new epoch already finds the snapshot open
+    // and keeps the state it replaces. A change that read the old epoch holds its book's lock, which
+    // the snapshot waits for before printing the book, so each book change falls wholly before or
+    // after the snapshot. An open bulk load is not included; execute finishes it first, as a writer.
+    CatalogSnapshot openSnapshot() {
+        while (true) {
+            Published current = published.get();
+            long version = current.epoch + 1;
+            openSnapshots.merge(version, 1, Integer::sum);
+            if (published.compareAndSet(current, new Published(current.root, version))) {
+                return new CatalogSnapshot(this, version, current.root);
+            }
+            release(version); // A writer or another reader got in first
+        }
+    }
+
+    // Publishes a new root at the current epoch. A book just inserted into root is stamped with the
+    // epoch it is published at, so no snapshot sees it before its epoch. The caller holds the catalog
+    // write lock, so only readers race it, and only to advance the epoch.
+    private void publishRoot(PersistentBookTree.Node root, Book inserted) {
+        while (true) {
+            Published current = published.get();
+            if (inserted != null) {
+                inserted.stamp = current.epoch;
+            }
+            if (published.compareAndSet(current, new Published(root, current.epoch))) {
+                return;
+            }
+        }
+    }
+
+    private PersistentBookTree.Node snapshotRoot() {
+        return published.get().root;
+    }
+
+    private void release(long version) {
+        openSnapshots.computeIfPresent(version, (key, count) -> count == 1 ? null : count - 1);
+    }
+
+    // Once the oldest open snapshot closes, drops the book states no remaining snapshot sees
+    void closeSnapshot(long version) {
+        release(version);
+        if (openSnapshots.isEmpty() || openSnapshots.firstKey() > version) {
+            for (int n = versionedBooks.size(); n > 0; n--) {
+                Book book = versionedBooks.poll();
+                if (book == null) {
+                    break;
+                }
+                synchronized (lockFor(book.bookID)) {
+                    book.history = prune(book.history, book.stamp);
+                    if (book.history != null) {
+                        versionedBooks.add(book);
+                    }
+                }
+            }
+        }
+    }
+
+    // Called before changing book, under its lock. Drops its cached PrintBook record, and the first
+    // change since a snapshot opened keeps the state it replaces if an open snapshot sees it.
+    private void beforeChange(Book book) {
+        book.rendered = null;
+        long current = published.get().epoch;
+        if (book.stamp == current) {
+            return;
+        }
+        BookVersion older = prune(book.history, book.stamp);
+        if (seenBySnapshot(book.stamp, current)) {
+            if (older == null) {
+                versionedBooks.add(book);
+            }
+            older = new BookVersion(book, older);
+        }
+        book.history = older;
+        book.stamp = current;
+    }
+
+    // Whether an open snapshot sees a state written in epoch stamp and replaced in epoch replaced
+    private boolean seenBySnapshot(long stamp, long replaced) {
+        Long reader = openSnapshots.higherKey(stamp);
+        return reader != null && reader <= replaced;
+    }
+
+    // The states of a history that open snapshots still see; newerStamp is when the first was replaced
+    private BookVersion prune(BookVersion history, long newerStamp) {
+        BookVersion head = null;
+        BookVersion tail = null;
+        for (BookVersion version = history; version != null; version = version.older) {
+            if (seenBySnapshot(version.stamp, newerStamp)) {
+                if (tail == null) {
+                    head = version;
+                } else {
+                    tail.older = version;
+                }
+                tail = version;
+            }
+            newerStamp = version.stamp;
+        }
+        if (tail != null) {
+            tail.older = null;
+        }
+        return head;
+    }
+   
+    private void insertBook(int bookID, String title, String author, String availabilityStatus, int borrowedBy, ResponseWriter out) throws IOException {
+        if (books.containsKey(bookID)) { // If book already exists
+            out.write(BOOK_EXISTS);
+            out.write(bookID);
+            out.write(NEWLINE);
+            return;
+        }
+        Book book = new Book(bookID, title, author, availabilityStatus, borrowedBy);
+        book.stamp = published.get().epoch;
+        books.put(bookID, book);
+        index.add(bookID, title, author);
+        if (bulkKeys != null) {
+            if (bulkCount == bulkKeys.length) {
+                bulkKeys = Arrays.copyOf(bulkKeys, bulkCount * 2);
+            }
+            bulkKeys[bulkCount++] = bookID;
+        } else {
+            redBlackTree.insert(bookID);
+            publishRoot(PersistentBookTree.insert(snapshotRoot(), bookID, book), book);
+        }
+        colorFlipCount.increment(); // Update color flip count after insertion
+        if (journal != null) {
+            journal.logInsertBook(bookID, title, author, availabilityStatus);
+        }
+        if (changes != null) {
+            changes.logInsertBook(bookID, title, author, availabilityStatus);
+        }
+       
+    }
+
+    private void borrowBook(int patronID, int bookID, int patronPriority, ResponseWriter out) throws IOException {
+        Book book = books.get(bookID);
+        if (book == null) { //if the book is not found in the library
+            out.write(NEWLINE);
+            out.write(BOOK_NOT_FOUND);
+            return;
+        }
+        synchronized (lockFor(bookID)) {
+            if (book.borrowedBy == patronID) { // A patron holds a book or waits for it, never both
+                writeBookEvent(bookID, ALREADY_BORROWED_BY, patronID, out);
+                return;
+            }
+            if ("Yes".equals(book.availabilityStatus)) { // When the book is avaiable
+                beforeChange(book);
+                if (book.borrowedBy != -1) { // Allotted on return but never collected
+                    patrons.returned(book.borrowedBy, bookID);
+                }
+                book.availabilityStatus = "No";
+                book.borrowedBy = patronID;
+                patrons.borrowed(patronID, bookID);
+                writeBookEvent(bookID, BORROWED_BY, patronID, out);
+
+            } else if (book.reservationHeap.contains(patronID)) {
+                writeBookEvent(bookID, ALREADY_RESERVED_BY, patronID, out);
+                return;
+            } else {
+                beforeChange(book);
+                book.reservationHeap.insert(patronID, patronPriority, ++book.reservationClock);
+                reservationsChanged(book, book.reservationHeap.size() - 1);
+                patrons.reserved(patronID, bookID);
+                writeBookEvent(bookID, RESERVED_BY, patronID, out);
+            }
+            if (journal != null) {
+                journal.logBorrowBook(patronID, bookID, patronPriority);
+            }
+            if (changes != null) {
+                changes.logBorrowBook(patronID, bookID, patronPriority);
+            }
+        }
+        colorFlipCount.increment(); // Update color flip count after borrowing
+      }
+
+
+    private void returnBook(int patronID, int bookID, ResponseWriter out) throws IOException {   
+        Book book = books.get(bookID);
+        if (book == null) {
+            out.write(NEWLINE);
+            out.write(BOOK_NOT_FOUND);
+            return;
+        }
+        synchronized (lockFor(bookID)) {
+            if (book.borrowedBy != patronID) {
+                writeBookEvent(bookID, NOT_BORROWED_BY, patronID, out);
+                return;
+            }
+            //Update book status
+            beforeChange(book);
+            book.availabilityStatus = "Yes";
+            book.borrowedBy = -1;
+            patrons.returned(patronID, bookID);
+            // Check if there are reservations
+            if (!book.reservationHeap.isEmpty()) {
+                // Get the top patron from the reservation heap
+                Reservation reservation = book.reservationHeap.extractMin();
+                reservationsChanged(book, book.reservationHeap.size() + 1);
+                book.borrowedBy = reservation.patronID;
+                patrons.unreserved(reservation.patronID, bookID);
+                patrons.borrowed(reservation.patronID, bookID);
+                writeBookEvent(bookID, RETURNED_BY, patronID, out);
+                writeBookEvent(bookID, ALLOTTED_TO, reservation.patronID, out);
+            } else {
+                writeBookEvent(bookID, RETURNED_BY, patronID, out);
+            }
+            if (journal != null) {
+                journal.logReturnBook(patronID, bookID);
+            }
+            if (changes != null) {
+                changes.logReturnBook(patronID, bookID);
+            }
+        }
+        colorFlipCount.increment(); // Update color flip count after returning*/
+    }
+
+    // Brings reservationTotals up to date with book's heap, which held oldSize reservations before the
+    // caller, holding the book's lock, changed it
+    private void reservationsChanged(Book book, int oldSize) {
+        reservationTotals.resized(book.bookID, oldSize, book.reservationHeap.size());
+    }
+
+    // CancelReservation and ChangePriority find the patron's entry through the heap's position map
+    private void cancelReservation(int patronID, int bookID, ResponseWriter out) throws IOException {
+        Book book = books.get(bookID);
+        if (book == null) {
+            out.write(NEWLINE);
+            out.write(BOOK_NOT_FOUND);
+            return;
+        }
+        synchronized (lockFor(bookID)) {
+            if (!book.reservationHeap.contains(patronID)) {
+                writeBookEvent(bookID, NOT_RESERVED_BY, patronID, out);
+                return;
+            }
+            beforeChange(book);
+            book.reservationHeap.remove(patronID);
+            reservationsChanged(book, book.reservationHeap.size() + 1);
+            patrons.unreserved(patronID, bookID);
+            writeBookEvent(bookID, RESERVATION_CANCELLED, patronID, out);
+            if (journal != null) {
+                journal.logCancelReservation(patronID, bookID);
+            }
+            if (changes != null) {
+                changes.logCancelReservation(patronID, bookID);
+            }
+        }
+    }
+
+    private void changePriority(int patronID, int bookID, int patronPriority, ResponseWriter out) throws IOException {
+        Book book = books.get(bookID);
+        if (book == null) {
+            out.write(NEWLINE);
+            out.write(BOOK_NOT_FOUND);
+            return;
+        }
+        synchronized (lockFor(bookID)) {
+            if (!book.reservationHeap.contains(patronID)) {
+                writeBookEvent(bookID, NOT_RESERVED_BY, patronID, out);
+                return;
+            }
+            beforeChange(book);
+            book.reservationHeap.changePriority(patronID, patronPriority);
+            writeBookEvent(bookID, PRIORITY_CHANGED, patronID, out);
+            if (journal != null) {
+                journal.logChangePriority(patronID, bookID, patronPriority);
+            }
+            if (changes != null) {
+                changes.logChangePriority(patronID, bookID, patronPriority);
+            }
+        }
+    }
+
+private void deleteBook(int bookID, ResponseWriter out) throws IOException {
+    Book book = books.get(bookID);
+    if (book == null) {
+        out.write(BOOK_NOT_FOUND);
+        return;
+    }
+    int prevColorFlipCount = redBlackTree.getColorFlipCount(); // Update color flip count before deletion
+    books.remove(bookID);
+    if (bulkKeys != null) { // Not in the tree yet
+        dropBulkKey(bookID);
+    }
+    if (renderCache != null) {
+        renderCache.remove(book);
+    }
+    index.remove(bookID, book.title, book.author);
+    if (book.borrowedBy != -1) {
+        patrons.returned(book.borrowedBy, bookID);
+    }
+    int currentColorFlipCount = redBlackTree.getColorFlipCount();// Update color flip count after the book removal from the map  
+    redBlackTree.delete(bookID);// Delete the book from the Red-Black Tree    
+    publishRoot(PersistentBookTree.delete(snapshotRoot(), bookID), null);
+    if (journal != null) {
+        journal.logDeleteBook(bookID);
+    }
+    if (changes != null) {
+        changes.logDeleteBook(bookID);
+    }
+    colorFlipCount.add(currentColorFlipCount - prevColorFlipCount);// Calculate the change in color flip count and update the overall count
+        if (!book.reservationHeap.isEmpty()) { // Notify patrons about book unavailability
+        out.write(BOOK);
+        out.write(bookID);
+        out.write(NO_LONGER_AVAILABLE_CANCELLED);
+        synchronized (lockFor(bookID)) { // Snapshots opened earlier may still be printing the book
+            beforeChange(book);
+            reservationTotals.resized(bookID, book.reservationHeap.size(), 0);
+            while (!book.reservationHeap.isEmpty()) {
+                Reservation reservation = book.reservationHeap.extractMin();
+                patrons.unreserved(reservation.patronID, bookID);
+                out.write(SPACE);
+                out.write(reservation.patronID);
+                out.write(SPACE);
+            }
+        }
+        out.write(HAVE_BEEN_CANCELLED);
+    } else {
+        out.write(BOOK);
+        out.write(bookID);
+        out.write(NO_LONGER_AVAILABLE);
+    }
+}
+
+void printBook(int bookID, ResponseWriter out) throws IOException {
+    Book book = books.get(bookID);
+    if (book == null) { // If the book is not found
+        out.write(BOOK_NOT_FOUND_PREFIX);
+        out.write(bookID);
+        out.write(NOT_FOUND_IN_LIBRARY);
+        return;
+    }
+    synchronized (lockFor(bookID)) {
+        writeBook(book, out);
+    }
+}
+
+// PrintBook of book's current state, from the render cache when it holds the record; the caller
+// holds the book's lock
+private void writeBook(Book book, ResponseWriter out) throws IOException {
+    if (renderCache == null) {
+        writeRecord(book, out);
+        return;
+    }
+    byte[] rendered = renderCache.get(book);
+    if (rendered != null) {
+        out.write(rendered);
+        return;
+    }
+    int maxLength = RECORD_OVERHEAD + book.displayTitle.length + book.displayAuthor.length
+            + 13 * book.reservationHeap.size();
+    if (maxLength > out.capacity()) { // Would not fit between two flushes
+        writeRecord(book, out);
+        return;
+    }
+    out.reserve(maxLength);
+    int start = out.position();
+    writeRecord(book, out);
+    renderCache.put(book, out.bytesSince(start));
+}
+
+private void writeRecord(Book book, ResponseWriter out) throws IOException {
+    writeBookFields(book, book.availabilityStatus, book.borrowedBy, out);
+    MinHeap reservations = book.reservationHeap;
+    for (int i = 0; i < reservations.size(); i++) {
+        if (i > 0) {
+            out.write(LIST_SEPARATOR);
+        }
+        out.write(reservations.patronAt(i));
+    }
+    out.write(LIST_END);
+}
+
+// PrintBook of book as snapshot sees it: its current state, or the one its history kept for the snapshot
+private void printBook(Book book, CatalogSnapshot snapshot, ResponseWriter out) throws IOException {
+    synchronized (lockFor(book.bookID)) {
+        if (book.stamp < snapshot.version) {
+            writeBook(book, out);
+            return;
+        }
+        BookVersion version = book.history;
+        while (version.stamp >= snapshot.version) {
+            version = version.older;
+        }
+        writeBookFields(book, version.availabilityStatus, version.borrowedBy, out);
+        writeList(version.reservations, out);
+        out.write(LIST_END);
+    }
+}
+
+// PrintBook up to the reservation list
+private void writeBookFields(Book book, String availabilityStatus, int borrowedBy, ResponseWriter out) throws IOException {
+    out.write(BOOK_ID_FIELD);
+    out.write(book.bookID);
+    out.write(TITLE_FIELD);
+    out.write(book.displayTitle);
+    out.write(AUTHOR_FIELD);
+    out.write(book.displayAuthor);
+    out.write(AVAILABILITY_FIELD);
+    out.write(availabilityStatus.equals("Yes") ? NO : YES);
+    out.write(BORROWED_BY_FIELD);
+    if (borrowedBy == -1) {
+        out.write(NONE);
+    } else {
+        out.write(borrowedBy);
+    }
+    out.write(RESERVATIONS_FIELD);
+}
+
+// Writes a one-line "Book <id> <action> <patronID>" response
+private void writeBookEvent(int bookID, byte[] action, int patronID, ResponseWriter out) throws IOException {
+    out.write(BOOK);
+    out.write(bookID);
+    out.write(action);
+    out.write(patronID);
+    out.write(NEWLINE);
+}
+
+// One page of PrintBooks: at most limit of the books in range, after skipping the first offset.
+// Returns how many were printed. The range is walked on a snapshot, so no catalog lock is held
+// while it prints and InsertBook and DeleteBook need not wait for a long range to finish.
+int printBooks(int bookID1, int bookID2, int offset, int limit, ResponseWriter out) throws IOException {
+    if (bookID1 > bookID2 || offset < 0) {
+        return 0;
+    }
+    int printed = 0;
+    try (CatalogSnapshot snapshot = openSnapshot()) {
+        PersistentBookTree.Cursor books = snapshot.books(bookID1, offset);
+        for (; printed < limit && books.hasNext(); printed++) { // Walk only the books present in-between
+            PersistentBookTree.Node node = books.next();
+            if (node.key > bookID2) {
+                break;
+            }
+            printBook(node.book, snapshot, out);
+        }
+    }
+    return printed;
+}
+
+// Books in [bookID1, bookID2], counted from subtree sizes without visiting them
+int countBooks(int bookID1, int bookID2) {
+    return redBlackTree.countInRange(bookID1, bookID2);
+}
+
+void writeBookCount(long count, ResponseWriter out) throws IOException {
+    out.write(BOOK_COUNT);
+    out.write(Long.toString(count));
+    out.write(NEWLINE);
+}
+
+public int findClosestBook(int bookID, ResponseWriter out) throws IOException {
+    long lower = redBlackTree.floorKey(bookID);
+    if (lower == bookID) {
+        printBook(bookID, out); // If the bookID exists, return the same ID
+        return bookID;
+    }
+    long higher = redBlackTree.ceilingKey(bookID);
+    if (lower == RedBlackTree.NO_KEY && higher == RedBlackTree.NO_KEY) {
+        return -1; // No available book IDs
+    }
+    // Determine the closest book ID based on proximity, printing both on a tie
+    long lowerGap = lower == RedBlackTree.NO_KEY ? Long.MAX_VALUE : bookID - lower;
+    long higherGap = higher == RedBlackTree.NO_KEY ? Long.MAX_VALUE : higher - bookID;
+    if (lowerGap <= higherGap) {
+        printBook((int) lower, out);
+    }
+    if (higherGap <= lowerGap) {
+        printBook((int) higher, out);
+    }
+    return (int) (lowerGap <= higherGap ? lower : higher);
+}
+
+// IDs of the first limit books by author, and of books whose title matches query, as CatalogIndex
+// finds them. The caller holds the catalog read lock.
+int[] findBooksByAuthor(String author, int limit) {
+    return index.findByAuthor(author, limit);
+}
+
+int[] searchTitle(String query, int limit) {
+    return index.searchTitle(query, limit, bookID -> books.get(bookID).title);
+}
+
+// Books patronID has borrowed and reserved, each ascending
+int[][] patronBooks(int patronID) {
+    return patrons.booksOf(patronID);
+}
+
+void printPatron(int patronID, int[][] books, ResponseWriter out) throws IOException {
+    out.write(PATRON_ID_FIELD);
+    out.write(patronID);
+    out.write(BORROWED_FIELD);
+    writeList(books[0], out);
+    out.write(RESERVED_FIELD);
+    writeList(books[1], out);
+    out.write(LIST_END);
+}
+
+private static void writeList(int[] values, ResponseWriter out) throws IOException {
+    for (int i = 0; i < values.length; i++) {
+        if (i > 0) {
+            out.write(LIST_SEPARATOR);
+        }
+        out.write(values[i]);
+    }
+}
+
+// Prints each of bookIDs as PrintBook does, or a note that nothing matched
+void printMatches(int[] bookIDs, ResponseWriter out) throws IOException {
+    if (bookIDs.length == 0) {
+        out.write(NO_BOOKS_FOUND);
+        return;
+    }
+    for (int bookID : bookIDs) {
+        printBook(bookID, out);
+    }
+}
+
+private void colorFlipCount(ResponseWriter out) throws IOException {
+    out.write(COLOUR_FLIP_COUNT);
+    out.write(totalColorFlipCount());
+    out.write(NEWLINE);
+    
+}
+
+// Flips counted by the library plus those of its tree, as ColorFlipCount reports them
+int totalColorFlipCount() {
+    return colorFlipCount.intValue() + redBlackTree.getColorFlipCount();
+}
+
+    public void processOperation(String operation) {
+       
+        System.out.println("Processing Operation: " + operation);
+    }
+
+    // Same output as executeOperationsFromFile, with reading and parsing, execution and writing on
+    // three threads; see OperationPipeline
+    public void executeOperationsPipelined(String inputFilename) throws IOException {
+        executeOperationsPipelined(new PartitionedLibrary(this), inputFilename);
+    }
+
+    // Pipelined file mode over a partitioned catalog, one executor thread per partition
+    public static void executeOperationsPipelined(PartitionedLibrary library, String inputFilename) throws IOException {
+        try (BufferedReader br = new BufferedReader(new FileReader(inputFilename), 1 << 16);
+             ResponseWriter out = ResponseWriter.toFile(getOutputFilename(inputFilename))) {
+            new OperationPipeline(library).run(br, out);
+        }
+    }
+
+    // Runs every line of inputFilename, writing the responses to its output file. Quit ends the file
+    // there, not the JVM, so several files can run side by side in one process. Failing to read the
+    // input or write the output is thrown, so the caller can count the file as failed.
+     public void executeOperationsFromFile(String inputFilename) throws IOException {
+        try (BufferedReader br = new BufferedReader(new FileReader(inputFilename));
+             ResponseWriter out = ResponseWriter.toFile(getOutputFilename(inputFilename))) {
+
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (!processOperation(line, out)) {
+                    break;
+                }
+            }
+
+        }
+    }
+
+    // Same as executeOperationsFromFile, but memory-maps the input and parses lines straight from the
+    // mapped bytes. Windows of the file are mapped in turn, each starting at the first byte of a line
+    // the previous window could not finish, so lines that cross a window boundary are read whole.
+    public void executeOperationsFromMappedFile(String inputFilename) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(inputFilename), StandardOpenOption.READ);
+             ResponseWriter out = ResponseWriter.toFile(getOutputFilename(inputFilename))) {
+
+            long fileSize = channel.size();
+            long position = 0;
+            boolean open = true;
+            while (open && position < fileSize) {
+                int length = (int) Math.min(MAP_WINDOW_SIZE, fileSize - position);
+                boolean lastWindow = position + length == fileSize;
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                int lineStart = 0;
+                int nonAscii = 0;
+                for (int i = 0; open && i < length; i++) {
+                    byte b = window.get(i);
+                    if (b == '\n') {
+                        open = processLine(window, lineStart, i, nonAscii < 0, out);
+                        lineStart = i + 1;
+                        nonAscii = 0;
+                    } else {
+                        nonAscii |= b;
+                    }
+                }
+                if (!open) {
+                    break;
+                }
+                if (lastWindow) {
+                    if (lineStart < length) {
+                        processLine(window, lineStart, length, nonAscii < 0, out);
+                    }
+                    position = fileSize;
+                } else if (lineStart == 0) {
+                    throw new IOException("Line longer than " + MAP_WINDOW_SIZE + " bytes at offset " + position);
+                } else {
+                    position += lineStart;
+                }
+            }
+
+        }
+    }
+
+    // Hands one line of the mapped file to processOperation, decoding it only if it is not plain ASCII.
+    // Returns false once Quit has been answered.
+    private boolean processLine(ByteBuffer window, int start, int end, boolean nonAscii, ResponseWriter out) throws IOException {
+        if (end > start && window.get(end - 1) == '\r') {
+            end--;
+        }
+        if (!nonAscii) {
+            return processOperation(mappedLine.wrap(window, start, end), out);
+        }
+        byte[] bytes = new byte[end - start];
+        window.get(start, bytes);
+        return processOperation(new String(bytes, StandardCharsets.UTF_8), out);
+    }
+
+    private static String getOutputFilename(String inputFilename) {
+        int dotIndex = inputFilename.lastIndexOf('.');
+        if (dotIndex == -1) {
+            return inputFilename + "_output_file.txt";
+        } else {
+            return inputFilename.substring(0, dotIndex) + "_output_file.txt";
+        }
+    }
+    // Parses and runs one operation line with the library's own parser, for the single-threaded file
+    // modes. Returns false once Quit has been answered; the caller stops reading there.
+    public boolean processOperation(CharSequence operation, ResponseWriter out) throws IOException {
+        return processOperation(parser, operation, out);
+    }
+
+    // Thread-safe entry point: each caller brings its own parser. Returns false once Quit has been
+    // answered, leaving it to the caller to end its session.
+    public boolean processOperation(OperationParser parser, CharSequence operation, ResponseWriter out) throws IOException {
+        long startTime = System.nanoTime();
+        boolean open = execute(parser, parser.parse(operation), operation, out);
+        metrics.record(parser.error() == null ? parser.type : null, operation, System.nanoTime() - startTime);
+        return open;
+    }
+
+    // As processOperation, for a line the caller has already run through parser.parse, which returned
+    // parsed. Only execution is timed. Used by the pipelined file mode, which parses on another thread.
+    boolean processParsed(OperationParser parser, boolean parsed, CharSequence operation, ResponseWriter out) throws IOException {
+        long startTime = System.nanoTime();
+        boolean open = execute(parser, parsed, operation, out);
+        metrics.record(parsed ? parser.type : null, operation, System.nanoTime() - startTime);
+        return open;
+    }
+
+    // Commands that add or remove books, or need the catalog to hold still, take the catalog write lock
+    private static boolean changesCatalog(OperationType type) {
+        return type == OperationType.INSERT_BOOK || type == OperationType.DELETE_BOOK
+                || type == OperationType.EXPORT_CATALOG || type == OperationType.BULK_LOAD;
+    }
+
+    private boolean execute(OperationParser parser, boolean parsed, CharSequence operation, ResponseWriter out) throws IOException {
+    if (!parsed) {
+        if (parser.type == null) {
+            out.write("Invalid operation: " + operation + "\n");
+        } else {
+            out.write("Invalid " + parser.type.commandName + " operation: " + operation + " (" + parser.error() + ")\n");
+        }
+        return true;
+    }
+    int[] args = parser.intArgs;
+    OperationType type = parser.type;
+    if (type == OperationType.QUIT) {
+        out.write(PROGRAM_TERMINATED);
+        return false;
+    }
+
+    if (type == OperationType.PRINT_BOOKS) { // Locks nothing, unless a bulk load must be finished first
+        endBulkLoad();
+        printBooks(args[0], args[1], parser.argCount > 2 ? args[2] : 0, parser.argCount == 4 ? args[3] : Integer.MAX_VALUE, out);
+        return true;
+    }
+
+    if (replica != null && isMutation(type)) {
+        out.write("\nRead-only follower: " + type.commandName + " is not accepted\n");
+        return true;
+    }
+
+    // Any other command than InsertBook first completes an open bulk load, in the same write-lock
+    // section as the command, so no other command can run between the two
+    boolean endsBulkLoad = type != OperationType.INSERT_BOOK && type != OperationType.BULK_LOAD;
+    Lock lock = changesCatalog(type) || (endsBulkLoad && bulkKeys != null) ? catalogLock.writeLock() : catalogLock.readLock();
+    lock.lock();
+    while (lock == catalogLock.readLock() && endsBulkLoad && bulkKeys != null) { // A load opened meanwhile
+        lock.unlock();
+        lock = catalogLock.writeLock();
+        lock.lock();
+    }
+    try {
+        if (endsBulkLoad) {
+            finishBulkLoad();
+        }
+        switch (type) {
+            case INSERT_BOOK:
+                int borrowedBy = -1; // Initial value for a new book
+                insertBook(args[0], parser.stringArgs[1], parser.stringArgs[2], parser.stringArgs[3], borrowedBy, out);
+                break;
+
+            case PRINT_BOOK:
+                printBook(args[0], out);
+                break;
+
+            case COUNT_BOOKS:
+                writeBookCount(countBooks(args[0], args[1]), out);
+                break;
+
+            case BORROW_BOOK:
+                borrowBook(args[0], args[1], args[2], out);
+                break;
+
+            case RETURN_BOOK:
+                returnBook(args[0], args[1], out);
+                break;
+
+            case DELETE_BOOK:
+                deleteBook(args[0], out);
+                break;
+
+            case FIND_CLOSEST_BOOK:
+                findClosestBook(args[0], out);
+                break;
+
+            case COLOR_FLIP_COUNT:
+                colorFlipCount(out);
+                break;
+
+            case EXPORT_CATALOG:
+                exportCatalog(parser.stringArgs[0], out);
+                break;
+
+            case BULK_LOAD:
+                beginBulkLoad(args[0]);
+                break;
+
+            case FIND_BOOKS_BY_AUTHOR:
+                printMatches(findBooksByAuthor(parser.stringArgs[0], args[1]), out);
+                break;
+
+            case SEARCH_TITLE:
+                printMatches(searchTitle(parser.stringArgs[0], args[1]), out);
+                break;
+
+            case CANCEL_RESERVATION:
+                cancelReservation(args[0], args[1], out);
+                break;
+
+            case CHANGE_PRIORITY:
+                changePriority(args[0], args[1], args[2], out);
+                break;
+
+            case PRINT_PATRON:
+                printPatron(args[0], patronBooks(args[0]), out);
+                break;
+
+            case REPLICATION_STATUS:
+                replicationStatus(out);
+                break;
+
+            case TREE_STATS:
+                if (parser.argCount > 0) {
+                    reservationHeapStats(args[0], out);
+                } else {
+                    treeStats().write("Tree Stats:", out);
+                }
+                break;
+        }
+    } finally {
+        lock.unlock();
+    }
+    if (journal != null && isMutation(type)) {
+        journal.commit();
+        if (journal.snapshotDue()) {
+            checkpoint();
+        }
+    }
+    if (changes != null && isMutation(type)) {
+        changes.commit();
+    }
+    return true;
+}
+
+// Commands that may change a book or how books are loaded, and so are journaled and streamed
+private static boolean isMutation(OperationType type) {
+    return type == OperationType.INSERT_BOOK || type == OperationType.BULK_LOAD || type == OperationType.BORROW_BOOK
+            || type == OperationType.RETURN_BOOK || type == OperationType.DELETE_BOOK
+            || type == OperationType.CANCEL_RESERVATION || type == OperationType.CHANGE_PRIORITY;
+}
+
+// Structure of the catalog as TreeStats reports it, under the catalog read lock so no book is added
+// or removed meanwhile. Also called from JMX threads; the lock is reentrant for execute's callers.
+TreeStats treeStats() {
+    Lock lock = catalogLock.readLock();
+    lock.lock();
+    try {
+        return new TreeStats(redBlackTree, reservationTotals);
+    } finally {
+        lock.unlock();
+    }
+}
+
+void reservationHeapStats(int bookID, ResponseWriter out) throws IOException {
+    Book book = books.get(bookID);
+    if (book == null) {
+        out.write(BOOK_NOT_FOUND_PREFIX);
+        out.write(bookID);
+        out.write(NOT_FOUND_IN_LIBRARY);
+        return;
+    }
+    synchronized (lockFor(bookID)) {
+        MinHeap heap = book.reservationHeap;
+        out.write("\nBook " + bookID + " Reservation Heap: " + heap.size() + " reservations, depth " + heap.depth() + "\n");
+    }
+}
+
+private void replicationStatus(ResponseWriter out) throws IOException {
+    Replica following = replica;
+    if (following != null) {
+        out.write("\nReplication: " + following.status() + "\n");
+    } else if (changes != null) {
+        out.write("\nReplication: leader streaming to " + changes.target() + ", at sequence " + changes.sequence()
+                + ", " + changes.subscriberCount() + " subscribers\n");
+    } else {
+        out.write("\nReplication: not configured\n");
+    }
+}
+
+
+}
+
+public class gatorLibrary{
+    public static void main(String[] args) throws Exception {
+        String inputFile = null;
+        String serveAddress = null;
+        String dataDirectory = null;
+        String importFile = null;
+        String changeStreamFile = null;
+        String changeStreamAddress = null;
+        String followFile = null;
+        String followAddress = null;
+        String generateFile = null;
+        long generateOperations = 0;
+        boolean replay = false;
+        String metricsFile = null;
+        long metricsIntervalMillis = 10_000;
+        long slowOperationMillis = 10;
+        WorkloadGenerator workload = new WorkloadGenerator();
+        boolean mapped = false;
+        boolean pipelined = false;
+        int partitions = 0;
+        int maxBookID = 1_000_000;
+        boolean offHeapTree = false;
+        int renderCacheEntries = GatorLib.DEFAULT_RENDER_CACHE_ENTRIES;
+        boolean batch = false;
+        int jobs = Runtime.getRuntime().availableProcessors();
+        List<String> inputFiles = new ArrayList<>();
+        int syncEvery = 1;
+        long syncIntervalMillis = 0;
+        long snapshotEvery = 1_000_000;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--mmap":
+                    mapped = true;
+                    break;
+                case "--pipeline":
+                    pipelined = true;
+                    break;
+                case "--partitions":
+                    partitions = Integer.parseInt(args[++i]);
+                    break;
+                case "--max-book-id":
+                    maxBookID = Integer.parseInt(args[++i]);
+                    break;
+                case "--off-heap-tree":
+                    offHeapTree = true;
+                    break;
+                case "--batch":
+                    batch = true;
+                    break;
+                case "--jobs":
+                    jobs = Integer.parseInt(args[++i]);
+                    break;
+                case "--render-cache":
+                    renderCacheEntries = Integer.parseInt(args[++i]);
+                    break;
+                case "--serve":
+                    serveAddress = args[++i];
+                    break;
+                case "--load":
+                    LibraryServer.runLoad(LibraryServer.parseAddress(args[i + 1]), Integer.parseInt(args[i + 2]), Integer.parseInt(args[i + 3]));
+                    return;
+                case "--generate":
+                    generateFile = args[++i];
+                    generateOperations = Long.parseLong(args[++i]);
+                    break;
+                case "--books":
+                    workload.catalogSize = Integer.parseInt(args[++i]);
+                    break;
+                case "--patrons":
+                    workload.patronCount = Integer.parseInt(args[++i]);
+                    break;
+                case "--zipf":
+                    workload.zipfExponent = Double.parseDouble(args[++i]);
+                    break;
+                case "--mix":
+                    workload.setMix(args[++i]);
+                    break;
+                case "--range-width":
+                    workload.rangeWidth = Integer.parseInt(args[++i]);
+                    break;
+                case "--seed":
+                    workload.seed = Long.parseLong(args[++i]);
+                    break;
+                case "--replay":
+                    replay = true;
+                    inputFile = args[++i];
+                    break;
+                case "--metrics-file":
+                    metricsFile = args[++i];
+                    break;
+                case "--metrics-interval-ms":
+                    metricsIntervalMillis = Long.parseLong(args[++i]);
+                    break;
+                case "--slow-op-ms":
+                    slowOperationMillis = Long.parseLong(args[++i]);
+                    break;
+                case "--import":
+                    importFile = args[++i];
+                    break;
+                case "--data-dir":
+                    dataDirectory = args[++i];
+                    break;
+                case "--cdc-file":
+                    changeStreamFile = args[++i];
+                    break;
+                case "--cdc-listen":
+                    changeStreamAddress = args[++i];
+                    break;
+                case "--follow-file":
+                    followFile = args[++i];
+                    break;
+                case "--follow":
+                    followAddress = args[++i];
+                    break;
+                case "--fsync-every":
+                    syncEvery = Integer.parseInt(args[++i]);
+                    break;
+                case "--fsync-interval-ms":
+                    syncIntervalMillis = Long.parseLong(args[++i]);
+                    break;
+                case "--snapshot-every":
+                    snapshotEvery = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    inputFile = args[i];
+                    inputFiles.add(args[i]);
+            }
+        }
+        if (generateFile != null) {
+            long startTime = System.nanoTime();
+            long lines = workload.write(generateFile, generateOperations);
+            System.out.printf("Wrote %d operations to %s in %d ms%n", lines, generateFile, (System.nanoTime() - startTime) / 1_000_000);
+            return;
+        }
+        if (inputFile == null && serveAddress == null) {
+            System.out.println("Usage: java gatorLib [--mmap | --pipeline] [durability options] input_file");
+            System.out.println("       java gatorLib --partitions <n> [--max-book-id <id>] input_file  (pipelined, one executor per book ID range)");
+            System.out.println("       java gatorLib --batch [--jobs <n>] [--mmap] <input_file|directory>...  (each file on its own library,");
+            System.out.println("                     n at a time, default one per core; a directory means the *.txt files in it)");
+            System.out.println("       java gatorLib --serve <port|socket_path> [durability options]");
+            System.out.println("       java gatorLib --load <port|socket_path> <connections> <operations_per_connection>");
+            System.out.println("       java gatorLib --generate <output_file> <operations> [--books <n>] [--patrons <n>] [--zipf <exponent>]");
+            System.out.println("                     [--mix <" + String.join(":", WorkloadGenerator.MIX_COMMANDS) + " weights>] [--range-width <n>] [--seed <n>]");
+            System.out.println("       java gatorLib --replay <input_file> [durability options]  (reports throughput and latency percentiles)");
+            System.out.println("Durability: --data-dir <dir> [--fsync-every <records>] [--fsync-interval-ms <ms>] [--snapshot-every <records>]");
+            System.out.println("Start from a catalog image written by ExportCatalog: --import <image_file>");
+            System.out.println("Stream every change to followers: --cdc-file <stream_file> | --cdc-listen <port|socket_path>");
+            System.out.println("       java gatorLib --serve <port|socket_path> --follow-file <stream_file> | --follow <port|socket_path>");
+            System.out.println("                     (read-only follower of a leader's change stream; ReplicationStatus() reports lag)");
+            System.out.println("Keep the red-black tree's nodes outside the Java heap: --off-heap-tree");
+            System.out.println("Cache the PrintBook records of up to n books (default " + GatorLib.DEFAULT_RENDER_CACHE_ENTRIES
+                    + ", 0 disables; over JMX as gator:type=RenderCache): --render-cache <n>");
+            System.out.println("Metrics (also over JMX as gator:type=Commands): --metrics-file <json_file> [--metrics-interval-ms <ms>]");
+            System.out.println("         [--slow-op-ms <ms>] (threshold for the gator.SlowOperation JFR event)");
+            return;
+        }
+        boolean leading = changeStreamFile != null || changeStreamAddress != null;
+        boolean following = followFile != null || followAddress != null;
+        if (leading && (batch || partitions > 0 || following)) {
+            System.out.println("--cdc-file and --cdc-listen stream one library; they cannot be combined with --batch, --partitions, --follow or --follow-file");
+            return;
+        }
+        if (following && (serveAddress == null || replay || pipelined || mapped || importFile != null || dataDirectory != null)) {
+            System.out.println("A follower serves reads only: --follow and --follow-file need --serve and cannot be combined with --replay, --pipeline, --mmap, --import or --data-dir");
+            return;
+        }
+        if (importFile != null && dataDirectory != null) {
+            System.out.println("--import and --data-dir cannot be combined; the data directory already has its own snapshot");
+            return;
+        }
+        if (batch) {
+            if (serveAddress != null || replay || pipelined || partitions > 0 || importFile != null || dataDirectory != null || metricsFile != null) {
+                System.out.println("--batch runs input files only; it cannot be combined with --serve, --replay, --pipeline, --partitions, --import, --data-dir or --metrics-file");
+                return;
+            }
+            BatchRunner runner = new BatchRunner();
+            runner.jobs = jobs;
+            runner.mapped = mapped;
+            runner.offHeapTree = offHeapTree;
+            runner.renderCacheEntries = renderCacheEntries;
+            runner.slowOperationNanos = TimeUnit.MILLISECONDS.toNanos(slowOperationMillis);
+            if (runner.run(BatchRunner.expand(inputFiles)) > 0) {
+                System.exit(1);
+            }
+            return;
+        }
+        if (partitions > 0) {
+            if (serveAddress != null || replay || mapped || importFile != null || dataDirectory != null || metricsFile != null) {
+                System.out.println("--partitions runs an input file only; it cannot be combined with --serve, --replay, --mmap, --import, --data-dir or --metrics-file");
+                return;
+            }
+            PartitionedLibrary library = new PartitionedLibrary(partitions, maxBookID, offHeapTree, renderCacheEntries);
+            for (GatorLib partition : library.partitions) {
+                partition.metrics.setSlowThresholdNanos(TimeUnit.MILLISECONDS.toNanos(slowOperationMillis));
+            }
+            GatorLib.executeOperationsPipelined(library, inputFile);
+            return;
+        }
+
+        GatorLib gatorLibrary = new GatorLib(offHeapTree, renderCacheEntries);
+        gatorLibrary.metrics.setSlowThresholdNanos(TimeUnit.MILLISECONDS.toNanos(slowOperationMillis));
+        gatorLibrary.metrics.registerMBeans();
+        if (gatorLibrary.renderCache != null) {
+            gatorLibrary.renderCache.registerMBean();
+        }
+        TreeStats.registerMBean(gatorLibrary);
+        if (metricsFile != null) {
+            gatorLibrary.metrics.startJsonDump(Path.of(metricsFile), metricsIntervalMillis);
+        }
+        if (importFile != null) {
+            long startTime = System.nanoTime();
+            CatalogImage.load(Path.of(importFile), gatorLibrary);
+            System.out.printf("Imported catalog from %s in %d ms%n", importFile, (System.nanoTime() - startTime) / 1_000_000);
+        }
+        if (dataDirectory != null) {
+            LibraryJournal journal = new LibraryJournal(Path.of(dataDirectory), syncEvery, syncIntervalMillis, snapshotEvery);
+            long startTime = System.nanoTime();
+            long replayed = journal.recover(gatorLibrary);
+            System.out.printf("Recovered library from %s in %d ms (%d journal records replayed)%n",
+                    dataDirectory, (System.nanoTime() - startTime) / 1_000_000, replayed);
+            gatorLibrary.attachJournal(journal);
+            // Closed on the way out, whether the JVM ends with the input or on a signal
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    System.err.println("Closing the journal failed: " + e.getMessage());
+                }
+            }));
+        }
+        if (leading) {
+            ChangeStream changes = changeStreamFile != null
+                    ? ChangeStream.toFile(gatorLibrary, Path.of(changeStreamFile))
+                    : ChangeStream.listen(gatorLibrary, LibraryServer.parseAddress(changeStreamAddress));
+            // Followers learn the leader is gone from the END record written on the way out
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    changes.close();
+                } catch (IOException e) {
+                    System.err.println("Closing the change stream failed: " + e.getMessage());
+                }
+            }));
+        }
+        if (followFile != null) {
+            gatorLibrary.follow(Replica.ofFile(gatorLibrary, Path.of(followFile)));
+        } else if (followAddress != null) {
+            gatorLibrary.follow(Replica.ofSocket(gatorLibrary, LibraryServer.parseAddress(followAddress)));
+        }
+        if (serveAddress != null) {
+            new LibraryServer(gatorLibrary, LibraryServer.parseAddress(serveAddress)).serve();
+        } else if (replay) {
+            ReplayHarness.run(gatorLibrary, inputFile);
+        } else if (pipelined) {
+            gatorLibrary.executeOperationsPipelined(inputFile);
+        } else if (mapped) {
+            gatorLibrary.executeOperationsFromMappedFile(inputFile);
+        } else {
+            gatorLibrary.executeOperationsFromFile(inputFile);
+        }
+    }
+}
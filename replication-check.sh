@@ -0,0 +1,104 @@
+#!/usr/bin/env bash
+# End-to-end check of change-data-capture across processes: a leader streaming on a local socket, a
+# follower that subscribes before any change and one that subscribes halfway through, so it starts
+# from an image. Once both have caught up, every book, the reservations and ColorFlipCount must match
+# the leader's. Run from anywhere; the ports can be moved with LEADER_PORT, STREAM_PORT and
+# FOLLOWER_PORT (the second follower takes FOLLOWER_PORT + 1).
+set -euo pipefail
+
+cd "$(dirname "$0")"
+make -s
+
+LEADER_PORT=${LEADER_PORT:-7301}
+STREAM_PORT=${STREAM_PORT:-7302}
+FOLLOWER_PORT=${FOLLOWER_PORT:-7303}
+OPERATIONS=${OPERATIONS:-20000}
+work=$(mktemp -d)
+pids=()
+
+cleanup() {
+    for pid in "${pids[@]}"; do
+        kill "$pid" 2>/dev/null || true
+    done
+    wait 2>/dev/null || true
+    rm -rf "$work"
+}
+trap cleanup EXIT
+
+# Sends the commands on stdin to the server on port $1, then Quit, and prints the responses. They are
+# read while the commands are still going out, or a long input would fill both socket buffers.
+send() {
+    local reader
+    exec 3<>"/dev/tcp/127.0.0.1/$1"
+    cat <&3 &
+    reader=$!
+    { cat; echo "Quit()"; } >&3
+    wait "$reader"
+    exec 3<&-
+}
+
+start() {
+    java -cp . gatorLibrary "$@" >>"$work/servers.log" 2>&1 &
+    pids+=($!)
+}
+
+await_port() {
+    for _ in $(seq 100); do
+        if (exec 3<>"/dev/tcp/127.0.0.1/$1") 2>/dev/null; then
+            return
+        fi
+        sleep 0.1
+    done
+    echo "nothing listening on port $1; see the log:" >&2
+    cat "$work/servers.log" >&2
+    exit 1
+}
+
+sequence() {
+    echo "ReplicationStatus()" | send "$1" | sed -n 's/.*at sequence \([0-9]*\).*/\1/p'
+}
+
+# Waits until the follower on port $1 has applied everything the leader has streamed
+await_catch_up() {
+    local target
+    target=$(sequence "$LEADER_PORT")
+    for _ in $(seq 300); do
+        if [ "$(sequence "$1")" = "$target" ]; then
+            return
+        fi
+        sleep 0.1
+    done
+    echo "follower on port $1 is stuck at sequence $(sequence "$1"), leader is at $target" >&2
+    exit 1
+}
+
+java -cp . gatorLibrary --generate "$work/ops.txt" "$OPERATIONS" --books 2000 --seed 7 >/dev/null
+grep -v '^Quit' "$work/ops.txt" >"$work/changes.txt"
+half=$(( $(wc -l <"$work/changes.txt") / 2 ))
+
+start --serve "$LEADER_PORT" --cdc-listen "$STREAM_PORT"
+await_port "$LEADER_PORT"
+start --serve "$FOLLOWER_PORT" --follow "$STREAM_PORT"
+await_port "$FOLLOWER_PORT"
+
+head -n "$half" "$work/changes.txt" | send "$LEADER_PORT" >/dev/null
+start --serve $((FOLLOWER_PORT + 1)) --follow "$STREAM_PORT"
+await_port $((FOLLOWER_PORT + 1))
+tail -n +"$((half + 1))" "$work/changes.txt" | send "$LEADER_PORT" >/dev/null
+
+state='PrintBooks(-2147483648, 2147483647)
+ColorFlipCount()'
+echo "$state" | send "$LEADER_PORT" >"$work/leader.txt"
+status=0
+for port in "$FOLLOWER_PORT" $((FOLLOWER_PORT + 1)); do
+    await_catch_up "$port"
+    echo "$state" | send "$port" >"$work/follower.txt"
+    if cmp -s "$work/leader.txt" "$work/follower.txt"; then
+        echo "follower on port $port matches the leader at sequence $(sequence "$port")"
+    else
+        echo "follower on port $port differs from the leader:" >&2
+        diff "$work/leader.txt" "$work/follower.txt" | head -20 >&2
+        status=1
+    fi
+done
+exit $status
@@ -0,0 +1,241 @@
+#!/usr/bin/env bash
+# Randomized check that PrintBooks, which reads a CatalogSnapshot without the catalog lock, only ever
+# shows a catalog that existed. The workload is a BulkLoad of every book, so readers also end a bulk
+# load under the writer, then generated operations, each of which changes at most one book. A serial
+# run records every book's state after each command that can change it. The workload then goes to a
+# fresh server on one connection while others send PrintBooks over the whole ID range until it is
+# done, and each of their responses must agree, book for book, with a single point of the serial run.
+# Run from anywhere; the port can be moved with PORT, the size with OPERATIONS, BOOKS and READERS,
+# and the workload with SEED.
+set -euo pipefail
+
+cd "$(dirname "$0")"
+make -s
+
+PORT=${PORT:-7311}
+OPERATIONS=${OPERATIONS:-20000}
+BOOKS=${BOOKS:-5000}
+READERS=${READERS:-3}
+SEED=${SEED:-11}
+work=$(mktemp -d)
+pids=()
+
+cleanup() {
+    for pid in "${pids[@]}"; do
+        kill "$pid" 2>/dev/null || true
+    done
+    wait 2>/dev/null || true
+    rm -rf "$work"
+}
+trap cleanup EXIT
+
+# Sends the commands on stdin to the server on port $1, then Quit, and prints the responses. They are
+# read while the commands are still going out, or a long input would fill both socket buffers.
+send() {
+    local reader
+    exec 3<>"/dev/tcp/127.0.0.1/$1"
+    cat <&3 &
+    reader=$!
+    { cat; echo "Quit()"; } >&3
+    wait "$reader"
+    exec 3<&-
+}
+
+start() {
+    java -cp . gatorLibrary "$@" >>"$work/server.log" 2>&1 &
+    pids+=($!)
+}
+
+stop() {
+    kill "${pids[-1]}"
+    wait "${pids[-1]}" 2>/dev/null || true
+    unset 'pids[-1]'
+}
+
+await_port() {
+    for _ in $(seq 100); do
+        if (exec 3<>"/dev/tcp/127.0.0.1/$1") 2>/dev/null; then
+            return
+        fi
+        sleep 0.1
+    done
+    echo "nothing listening on port $1; see the log:" >&2
+    cat "$work/server.log" >&2
+    exit 1
+}
+
+java -cp . gatorLibrary --generate "$work/ops.txt" "$OPERATIONS" --books "$BOOKS" --seed "$SEED" >/dev/null
+{
+    echo "BulkLoad($BOOKS)"
+    for id in $(seq 0 $((BOOKS - 1))); do
+        echo "InsertBook($id, \"Title $id\", \"Author $id\", \"Yes\")"
+    done
+    grep -v '^Quit' "$work/ops.txt"
+} >"$work/writes.txt"
+commands=$(wc -l <"$work/writes.txt")
+
+# Responses are picked out from among the others by lookups of books that cannot exist, which answer
+# "Book <ID> not found in the Library": -1000000 - k opens the state of the book command k changed,
+# -2000000 opens a reader's catalog, and -999999 closes either
+start --serve "$PORT"
+await_port "$PORT"
+awk '{ print; id = "" }
+     match($0, /^(InsertBook|DeleteBook)\(-?[0-9]+/) { id = substr($0, RSTART, RLENGTH); sub(/.*\(/, "", id) }
+     match($0, /^(BorrowBook|ReturnBook)\(-?[0-9]+, *-?[0-9]+/) { id = substr($0, RSTART, RLENGTH); sub(/.*, */, "", id) }
+     id != "" { print "PrintBook(" (-1000000 - NR) ")"; print "PrintBook(" id ")"; print "PrintBook(-999999)" }' \
+    "$work/writes.txt" | send "$PORT" >"$work/serial.txt"
+stop
+
+start --serve "$PORT"
+await_port "$PORT"
+readers=()
+for reader in $(seq "$READERS"); do
+    # Each reader waits for a catalog before asking for the next, so its reads are spread across the
+    # writes rather than queued up behind them. It reads a line at a time, so a catalog of thousands
+    # of books fills the socket and the server blocks partway through it, snapshot open, while the
+    # writes go on.
+    (
+        exec 3<>"/dev/tcp/127.0.0.1/$PORT"
+        while [ ! -e "$work/written" ]; do
+            printf 'PrintBook(-2000000)\nPrintBooks(-2147483648, 2147483647)\nPrintBook(-999999)\n' >&3
+            while IFS= read -r line <&3; do
+                echo "$line"
+                if [[ $line == "Book -999999 not found"* ]]; then
+                    break
+                fi
+            done
+        done
+        echo "Quit()" >&3
+    ) >"$work/reads.$reader.txt" &
+    readers+=($!)
+done
+# The writes go in bursts, so several land inside one read, with pauses that spread them over many
+split -l 50 "$work/writes.txt" "$work/burst."
+for burst in "$work"/burst.*; do
+    cat "$burst"
+    sleep 0.01
+done | send "$PORT" >/dev/null
+touch "$work/written"
+wait "${readers[@]}"
+
+# The serial run gives each book's states as (command, state) pairs in command order; before its first
+# pair a book has no state, "-". A catalog is consistent if some point of the serial run, 0 to
+# commands, gives every book the state the catalog shows, absent books included. The points each
+# book allows are intervals, so they are intersected book by book.
+cat "$work"/reads.*.txt | awk -v commands="$commands" '
+    function book_id(line) {
+        sub(/^(BookID = |Book )/, "", line)
+        sub(/ .*/, "", line)
+        return line
+    }
+    # Ends the state being read, as a serial run pair or as what the catalog shows
+    function end_book() {
+        if (id == "") {
+            return
+        }
+        if (catalog) {
+            shown[id] = state
+            key = key id ":" state ";"
+        } else {
+            pairs[id]++
+            at[id, pairs[id]] = command
+            was[id, pairs[id]] = state
+            known[id] = 1
+        }
+        id = ""
+    }
+    # Keeps only the points in lo[1..points], hi[1..points] at which the state of book b is s
+    function narrow(b, s,    p, from, to, i, l, h, n, newLo, newHi) {
+        n = 0
+        for (p = 0; p <= pairs[b]; p++) {
+            from = p == 0 ? 0 : at[b, p]
+            to = p == pairs[b] ? commands : at[b, p + 1] - 1
+            if ((p == 0 ? "-" : was[b, p]) != s) {
+                continue
+            }
+            for (i = 1; i <= points; i++) {
+                l = lo[i] > from ? lo[i] : from
+                h = hi[i] < to ? hi[i] : to
+                if (l <= h) {
+                    n++
+                    newLo[n] = l
+                    newHi[n] = h
+                }
+            }
+        }
+        points = n
+        for (i = 1; i <= n; i++) {
+            lo[i] = newLo[i]
+            hi[i] = newHi[i]
+        }
+    }
+    function fail(message) {
+        print message >"/dev/stderr"
+        failed = 1
+        exit 1
+    }
+    FNR == NR && /^Book -1[0-9][0-9][0-9][0-9][0-9][0-9][0-9]* not found/ {
+        command = -book_id($0) - 1000000
+        catalog = 0
+        inside = 1
+        next
+    }
+    /^Book -2000000 not found/ {
+        split("", shown)
+        key = ""
+        catalog = 1
+        inside = 1
+        next
+    }
+    /^Book -999999 not found/ {
+        end_book()
+        inside = 0
+        if (!catalog) {
+            next
+        }
+        reads++
+        distinct[key] = 1
+        for (b in shown) {
+            if (!(b in known)) {
+                fail("a catalog read concurrently shows book " b ", which the serial run never had")
+            }
+        }
+        points = 1
+        lo[1] = 0
+        hi[1] = commands
+        for (b in known) {
+            narrow(b, b in shown ? shown[b] : "-")
+            if (points == 0) {
+                fail("a catalog read concurrently matches no point of the serial run; book " b " shows " \
+                    (b in shown ? shown[b] : "nothing"))
+            }
+        }
+        next
+    }
+    !inside || $0 == "" {
+        next
+    }
+    /^(BookID = |Book -?[0-9]+ not found)/ {
+        end_book()
+        id = book_id($0)
+        state = /^BookID/ ? $0 : "-"
+        next
+    }
+    {
+        state = state "|" $0
+    }
+    END {
+        if (failed) {
+            exit 1
+        }
+        if (reads == 0) {
+            print "the readers got no catalogs; see the log:" >"/dev/stderr"
+            system("cat \"'"$work"'/server.log\" >&2")
+            exit 1
+        }
+        for (k in distinct) {
+            catalogs++
+        }
+        print reads " concurrent PrintBooks saw " catalogs " distinct catalogs, each at some point of the" \
+            " serial run"
+    }' "$work/serial.txt" -